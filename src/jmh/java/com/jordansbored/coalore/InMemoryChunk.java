@@ -0,0 +1,152 @@
+package com.jordansbored.coalore;
+
+import java.util.Arrays;
+
+/**
+ * {@link OreChunk} backed by plain int arrays, one per 32^3 section. Sections
+ * are filled with a single block id up to a flat surface and air above it,
+ * and only get an array once something is written to them, so a large grid
+ * of chunks only costs memory for the sections the generator touches.
+ */
+final class InMemoryChunk implements OreChunk {
+
+    static final int SECTION_VOLUME = 32 * 32 * 32;
+
+    private final int chunkX;
+    private final int chunkZ;
+    private final int fillBlockId;
+    private final int surfaceY;
+    private final Section[] sections = new Section[SectionBatchWriter.SECTION_COUNT];
+    private int saves;
+
+    InMemoryChunk(int chunkX, int chunkZ, int fillBlockId, int surfaceY) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.fillBlockId = fillBlockId;
+        this.surfaceY = surfaceY;
+    }
+
+    @Override
+    public int getX() {
+        return chunkX;
+    }
+
+    @Override
+    public int getZ() {
+        return chunkZ;
+    }
+
+    @Override
+    public OreSection section(int sectionY) {
+        if (sectionY < 0 || sectionY >= sections.length) {
+            return null;
+        }
+        Section section = sections[sectionY];
+        if (section == null) {
+            section = new Section(fillBlockId, sectionY << 5, surfaceY);
+            sections[sectionY] = section;
+        }
+        return section;
+    }
+
+    @Override
+    public int height(int x, int z) {
+        return surfaceY;
+    }
+
+    @Override
+    public int environment(int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public void markNeedsSaving() {
+        saves++;
+    }
+
+    int saves() {
+        return saves;
+    }
+
+    /** Sections that were written to and got their own array. */
+    int materializedSections() {
+        int count = 0;
+        for (Section section : sections) {
+            if (section != null && section.blocks != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Block at chunk-local x/z and world y, for assertions in ad-hoc checks. */
+    int getBlock(int x, int y, int z) {
+        return section(y >> 5).get(x & 31, y & 31, z & 31);
+    }
+
+    /**
+     * A section stays a fill value and a layer count until something writes
+     * to it; only then does it get its own array.
+     */
+    private static final class Section implements OreSection {
+        final int fillBlockId;
+        final int solidLayers;
+        int[] blocks;
+        int invalidations;
+
+        Section(int fillBlockId, int baseY, int surfaceY) {
+            this.fillBlockId = fillBlockId;
+            this.solidLayers = Math.max(0, Math.min(32, surfaceY - baseY + 1));
+        }
+
+        @Override
+        public int get(int x, int y, int z) {
+            if (blocks == null) {
+                // Layers above the surface are 0 = air
+                return y < solidLayers ? fillBlockId : 0;
+            }
+            return blocks[index(x, y, z)];
+        }
+
+        @Override
+        public boolean set(int x, int y, int z, int blockId) {
+            if (get(x, y, z) == blockId) {
+                return false;
+            }
+            if (blocks == null) {
+                blocks = new int[SECTION_VOLUME];
+                fill(blocks);
+            }
+            blocks[index(x, y, z)] = blockId;
+            return true;
+        }
+
+        @Override
+        public void read(int[] out) {
+            if (blocks == null) {
+                fill(out);
+            } else {
+                System.arraycopy(blocks, 0, out, 0, SECTION_VOLUME);
+            }
+        }
+
+        @Override
+        public boolean isAir() {
+            return solidLayers == 0;
+        }
+
+        @Override
+        public void invalidate() {
+            invalidations++;
+        }
+
+        private void fill(int[] out) {
+            Arrays.fill(out, 0, solidLayers << 10, fillBlockId);
+            Arrays.fill(out, solidLayers << 10, SECTION_VOLUME, 0);
+        }
+
+        private static int index(int x, int y, int z) {
+            return (y << 10) | (z << 5) | x;
+        }
+    }
+}
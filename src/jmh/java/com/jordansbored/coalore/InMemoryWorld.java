@@ -0,0 +1,59 @@
+package com.jordansbored.coalore;
+
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+
+/**
+ * A square of {@link InMemoryChunk}s centred on chunk (0, 0), plus block ids
+ * and an ore table that do not need the server's asset registry.
+ */
+final class InMemoryWorld implements OreWorld {
+
+    static final int AIR = 0;
+    static final int STONE = 1;
+    static final int ORE = 2;
+
+    private final int radius;
+    private final int side;
+    private final InMemoryChunk[] chunks;
+
+    /**
+     * @param radius chunks on each side of the origin; the world is (2 * radius) chunks wide
+     * @param surfaceY highest stone layer; everything above is air
+     */
+    InMemoryWorld(int radius, int surfaceY) {
+        this.radius = radius;
+        this.side = radius * 2;
+        this.chunks = new InMemoryChunk[side * side];
+        for (int cx = -radius; cx < radius; cx++) {
+            for (int cz = -radius; cz < radius; cz++) {
+                chunks[slot(cx, cz)] = new InMemoryChunk(cx, cz, STONE, surfaceY);
+            }
+        }
+    }
+
+    @Override
+    public InMemoryChunk chunk(int chunkX, int chunkZ) {
+        if (chunkX < -radius || chunkX >= radius || chunkZ < -radius || chunkZ >= radius) {
+            return null;
+        }
+        return chunks[slot(chunkX, chunkZ)];
+    }
+
+    int side() {
+        return side;
+    }
+
+    private int slot(int chunkX, int chunkZ) {
+        return (chunkX + radius) * side + (chunkZ + radius);
+    }
+
+    /**
+     * Stone becomes ore and ore becomes stone again, so repeated runs over
+     * the same chunks keep doing the same amount of writing instead of
+     * finding everything already converted.
+     */
+    static OreVariantTable toggleTable() {
+        int[] oreByHost = {OreVariantTable.NOT_REPLACEABLE, ORE, STONE};
+        return new OreVariantTable(oreByHost, new BlockType[oreByHost.length]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.jordansbored.coalore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * World-facing half of generation against in-memory chunks: command vein
+ * spawning, the host block check, and planning plus applying whole chunks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OreGeneratorBenchmark {
+
+    // 8x8 chunks; only the few sections veins reach get allocated (~32 MB)
+    private static final int WORLD_RADIUS = 4;
+    private static final int SURFACE_Y = 64;
+
+    private static final long WORLD_SEED = 1234567890L;
+
+    private InMemoryWorld world;
+    private OreVariantTable table;
+    private VeinPlanner planner;
+    private OreGenerator generator;
+    private PendingOreStore pending;
+    private Random random;
+    private int[] blockIds;
+    private int nextChunk;
+
+    @Setup
+    public void setup() {
+        CoalOreMetrics metrics = new CoalOreMetrics();
+        world = new InMemoryWorld(WORLD_RADIUS, SURFACE_Y);
+        table = InMemoryWorld.toggleTable();
+        planner = new VeinPlanner(metrics, false);
+        generator = new OreGenerator(metrics, false);
+        pending = new PendingOreStore(4096, 128 * 1024);
+        random = new Random(42L);
+
+        // Mostly stone with some air and out-of-range ids, like a real column
+        Random ids = new Random(7L);
+        blockIds = new int[4096];
+        for (int i = 0; i < blockIds.length; i++) {
+            int roll = ids.nextInt(10);
+            blockIds[i] = roll < 6 ? InMemoryWorld.STONE : roll < 8 ? InMemoryWorld.AIR : roll < 9 ? InMemoryWorld.ORE : 1000 + roll;
+        }
+    }
+
+    @Benchmark
+    public int spawnVein() {
+        int span = WORLD_RADIUS * 32 - 16;
+        int x = random.nextInt(span * 2) - span;
+        int z = random.nextInt(span * 2) - span;
+        int y = 10 + random.nextInt(50);
+        int size = 4 + random.nextInt(9);
+        return generator.spawnVein(world, table, x, y, z, size, random);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void isReplaceable(Blackhole bh) {
+        for (int id : blockIds) {
+            bh.consume(table.isReplaceable(id));
+        }
+    }
+
+    /**
+     * Natural generation for one chunk end to end: plan, then apply with
+     * carry-over between neighbouring chunks of the grid.
+     */
+    @Benchmark
+    public int generateChunk() {
+        int side = world.side();
+        int i = nextChunk++ % (side * side);
+        int chunkX = i / side - WORLD_RADIUS;
+        int chunkZ = i % side - WORLD_RADIUS;
+        InMemoryChunk chunk = world.chunk(chunkX, chunkZ);
+        VeinPlan plan = planner.plan(GenerationProfile.DEFAULT, WORLD_SEED, chunkX, chunkZ, ChunkOccupancy.scan(chunk));
+        return generator.applyPlan(chunk, plan, pending, table);
+    }
+}
@@ -0,0 +1,588 @@
+package com.jordansbored.coalore;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+
+/**
+ * Headless soak test for natural generation. Simulated players fly over
+ * synthetic terrain; chunks entering their view are generated, scanned and
+ * planned on a pool shaped like the plugin's, and a simulated world thread
+ * applies finished plans within the per-tick budget through the
+ * scheduler's own drain loop ({@link ProximityPlanQueue#drain}). Chunks leaving every player's view
+ * are unloaded, so plans get parked (and resumed if the chunk comes back)
+ * and carry-over piles up as on a real server.
+ *
+ * The report covers the ore work done on the world thread per tick
+ * (p50/p99/p999/max), chunk throughput, queue depth, how far from the
+ * nearest player plans were applied, and allocation on the world and
+ * planner threads, printed and written as JSON. Terrain creation
+ * and the simulated chunks' own storage are left out of the tick and
+ * allocation numbers, and so are the first {@code warmup} chunks while the
+ * JIT settles; the embedded plugin metrics cover the whole run. Arguments
+ * are {@code --key=value}; see {@link Options} for the keys and defaults.
+ */
+public final class SoakSimulator {
+
+    private static final int STONE = InMemoryWorld.STONE;
+
+    /** Chunks outside every player's view by this margin are unloaded. */
+    private static final int UNLOAD_MARGIN = 2;
+    private static final int UNLOAD_EVERY_TICKS = 10;
+    private static final int PENDING_MAX_CHUNKS = 4096;
+    private static final int PENDING_MAX_BLOCKS = 128 * 1024;
+    private static final int MAX_PARKED = 4096;
+    private static final long SECTION_BYTES = InMemoryChunk.SECTION_VOLUME * 4L + 16L;
+
+    static final class Options {
+        int chunks = 4000;          // stop generating after this many chunks
+        int warmup = 500;           // chunks generated before measuring starts
+        int players = 4;
+        double speed = 40.0;        // blocks per second
+        int view = 6;               // view radius in chunks
+        String path = "spiral";     // spiral, line or random
+        GenerationMode mode = GenerationMode.BLOB;
+        int genPerTick = 16;        // chunks the terrain generator hands over per tick
+        boolean applyInPreLoad = true; // like generation.applyInPreLoad
+        int budgetMicros = 2000;
+        int tickMillis = 33;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        int queueCapacity = 256;
+        long seed = 1234567890L;
+        Path out = Paths.get("build", "reports", "soak", "results.json");
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Expected --key=value, got " + arg);
+                }
+                String key = arg.substring(2, eq);
+                String value = arg.substring(eq + 1);
+                switch (key) {
+                    case "chunks" -> options.chunks = Integer.parseInt(value);
+                    case "warmup" -> options.warmup = Integer.parseInt(value);
+                    case "players" -> options.players = Integer.parseInt(value);
+                    case "speed" -> options.speed = Double.parseDouble(value);
+                    case "view" -> options.view = Integer.parseInt(value);
+                    case "path" -> options.path = value.toLowerCase(Locale.ROOT);
+                    case "mode" -> {
+                        options.mode = GenerationMode.parse(value);
+                        if (options.mode == null) {
+                            throw new IllegalArgumentException("Unknown mode " + value);
+                        }
+                    }
+                    case "genPerTick" -> options.genPerTick = Integer.parseInt(value);
+                    case "applyInPreLoad" -> options.applyInPreLoad = Boolean.parseBoolean(value);
+                    case "budgetMicros" -> options.budgetMicros = Integer.parseInt(value);
+                    case "tickMillis" -> options.tickMillis = Integer.parseInt(value);
+                    case "threads" -> options.threads = Integer.parseInt(value);
+                    case "queueCapacity" -> options.queueCapacity = Integer.parseInt(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    case "out" -> options.out = Paths.get(value);
+                    default -> throw new IllegalArgumentException("Unknown option --" + key);
+                }
+            }
+            if (!options.path.equals("spiral") && !options.path.equals("line") && !options.path.equals("random")) {
+                throw new IllegalArgumentException("Unknown path " + options.path + " (spiral, line or random)");
+            }
+            return options;
+        }
+    }
+
+    /**
+     * A player flying along its path; positions are in blocks.
+     */
+    private static final class Player {
+        final int id;
+        final Random random;
+        double x;
+        double z;
+        double heading;
+        double travelled;
+
+        Player(int id, long seed) {
+            this.id = id;
+            this.random = new Random(seed ^ (id * 0x9E3779B97F4A7C15L));
+            this.heading = random.nextDouble() * Math.PI * 2;
+        }
+
+        int chunkX() {
+            return (int) Math.floor(x) >> 5;
+        }
+
+        int chunkZ() {
+            return (int) Math.floor(z) >> 5;
+        }
+    }
+
+    private final Options options;
+    private final CoalOreMetrics metrics = new CoalOreMetrics();
+    private final VeinPlanner planner;
+    private final OreGenerator generator;
+    private final PendingOreStore pending = new PendingOreStore(PENDING_MAX_CHUNKS, PENDING_MAX_BLOCKS);
+    private final OreVariantTable table;
+    private final ThreadPoolExecutor plannerPool;
+    private final List<Thread> plannerThreads = new CopyOnWriteArrayList<>();
+    private final ProximityPlanQueue plans = new ProximityPlanQueue(metrics, MAX_PARKED);
+    private final AtomicInteger planning = new AtomicInteger();
+    private final Map<Long, InMemoryChunk> loaded = new HashMap<>();
+    private final List<Player> players = new ArrayList<>();
+    private final List<InMemoryChunk> fresh = new ArrayList<>();
+    private final int[] playerChunkX;
+    private final int[] playerChunkZ;
+
+    private long[] tickNanos = new long[1024];
+    private int ticks;
+    private int ticksOverBudget;
+    private long chunksGenerated;
+    private long chunksUnloaded;
+    private int maxLoaded;
+    private long storageBytes;
+    private long applyDistanceSum;
+    private long applyDistanceCount;
+    // Simulated storage allocated by the current drain
+    private long drainStorage;
+
+    private SoakSimulator(Options options) {
+        this.options = options;
+        this.planner = new VeinPlanner(metrics, false);
+        this.generator = new OreGenerator(metrics, false);
+        // Stone becomes ore and nothing else is touched
+        int[] oreByHost = {OreVariantTable.NOT_REPLACEABLE, InMemoryWorld.ORE, OreVariantTable.NOT_REPLACEABLE};
+        this.table = new OreVariantTable(oreByHost, new BlockType[oreByHost.length]);
+
+        AtomicInteger threadIds = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "CoalOre-Planner-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            plannerThreads.add(thread);
+            return thread;
+        };
+        this.plannerPool = new ThreadPoolExecutor(options.threads, options.threads, 30L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(options.queueCapacity), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.plannerPool.prestartAllCoreThreads();
+
+        for (int i = 0; i < options.players; i++) {
+            players.add(new Player(i, options.seed));
+        }
+        this.playerChunkX = new int[options.players];
+        this.playerChunkZ = new int[options.players];
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        System.out.printf(Locale.ROOT, "Soak: %d chunks, %d players at %.1f blocks/s (%s), view %d, %s mode, budget %d us, %d planner threads%n",
+            options.chunks, options.players, options.speed, options.path, options.view,
+            options.mode.name().toLowerCase(Locale.ROOT), options.budgetMicros, options.threads);
+        String json = new SoakSimulator(options).run();
+        Files.createDirectories(options.out.toAbsolutePath().getParent());
+        Files.writeString(options.out, json, StandardCharsets.UTF_8);
+        System.out.println("Results written to " + options.out.toAbsolutePath());
+    }
+
+    private String run() throws InterruptedException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tickNanosTarget = TimeUnit.MILLISECONDS.toNanos(options.tickMillis);
+        long budgetNanos = TimeUnit.MICROSECONDS.toNanos(options.budgetMicros);
+        double blocksPerTick = options.speed * options.tickMillis / 1000.0;
+
+        boolean measuring = false;
+        long measureStart = 0;
+        long chunksAtStart = 0;
+        long appliedAtStart = 0;
+        long plannerAllocatedAtStart = 0;
+        long gcCountAtStart = 0;
+        long gcMillisAtStart = 0;
+        long worldAllocated = 0;
+        long nextTick = System.nanoTime();
+
+        while (chunksGenerated < options.chunks || plans.size() > 0 || planning.get() > 0) {
+            if (!measuring && chunksGenerated >= Math.min(options.warmup, options.chunks - 1)) {
+                measuring = true;
+                measureStart = System.nanoTime();
+                chunksAtStart = chunksGenerated;
+                appliedAtStart = metrics.chunksApplied.sum();
+                plannerAllocatedAtStart = plannerAllocated(threadBean);
+                gcCountAtStart = gcCount();
+                gcMillisAtStart = gcMillis();
+            }
+
+            for (Player player : players) {
+                move(player, blocksPerTick);
+            }
+            // Terrain generation happens before the ore hook and is not ours to measure
+            if (chunksGenerated < options.chunks) {
+                generateAroundPlayers();
+            }
+
+            long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+            long tickStart = System.nanoTime();
+            long storage = 0;
+            for (InMemoryChunk chunk : fresh) {
+                storage += preload(chunk);
+            }
+            fresh.clear();
+            storage += drain(tickStart + budgetNanos);
+            long oreNanos = System.nanoTime() - tickStart;
+            long oreAllocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore - storage;
+            storageBytes += storage;
+            if (measuring) {
+                recordTick(oreNanos);
+                worldAllocated += oreAllocated;
+                if (oreNanos > budgetNanos) {
+                    ticksOverBudget++;
+                }
+            }
+
+            if (ticks % UNLOAD_EVERY_TICKS == 0) {
+                unloadOutOfView();
+            }
+
+            nextTick += tickNanosTarget;
+            long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            } else {
+                nextTick = System.nanoTime(); // overran; do not try to catch up
+            }
+        }
+
+        Measured measured = new Measured();
+        measured.seconds = (System.nanoTime() - measureStart) / 1e9;
+        measured.chunksGenerated = chunksGenerated - chunksAtStart;
+        measured.chunksApplied = metrics.chunksApplied.sum() - appliedAtStart;
+        measured.worldAllocated = worldAllocated;
+        measured.plannerAllocated = plannerAllocated(threadBean) - plannerAllocatedAtStart;
+        measured.gcCount = gcCount() - gcCountAtStart;
+        measured.gcMillis = gcMillis() - gcMillisAtStart;
+        plannerPool.shutdownNow();
+        return report(measured);
+    }
+
+    /** Totals over the measured part of the run. */
+    private static final class Measured {
+        double seconds;
+        long chunksGenerated;
+        long chunksApplied;
+        long worldAllocated;
+        long plannerAllocated;
+        long gcCount;
+        long gcMillis;
+    }
+
+    private long plannerAllocated(com.sun.management.ThreadMXBean threadBean) {
+        long total = 0;
+        for (Thread thread : plannerThreads) {
+            total += Math.max(0L, threadBean.getThreadAllocatedBytes(thread.getId()));
+        }
+        return total;
+    }
+
+    /**
+     * Advance a player along its path by one tick.
+     */
+    private void move(Player player, double distance) {
+        player.travelled += distance;
+        switch (options.path) {
+            case "line" -> {
+                // Parallel lanes far enough apart that views do not overlap
+                player.x = player.travelled;
+                player.z = player.id * (options.view * 2 + 1 + UNLOAD_MARGIN) * 32.0;
+            }
+            case "random" -> {
+                player.heading += (player.random.nextDouble() - 0.5) * 0.2;
+                player.x += Math.cos(player.heading) * distance;
+                player.z += Math.sin(player.heading) * distance;
+            }
+            default -> {
+                // Archimedean spiral r = b * theta whose loops are one view apart;
+                // arc length b * theta^2 / 2 gives theta for the distance flown.
+                double spacing = (options.view * 2 + 1) * 32.0;
+                double b = spacing / (2 * Math.PI);
+                double theta = Math.sqrt(2 * player.travelled / b);
+                double phase = player.id * 2 * Math.PI / options.players;
+                player.x = b * theta * Math.cos(theta + phase);
+                player.z = b * theta * Math.sin(theta + phase);
+            }
+        }
+    }
+
+    /**
+     * Generate up to {@code genPerTick} missing chunks, nearest to a player
+     * first; they get the pre-load hook later in the tick.
+     */
+    private void generateAroundPlayers() {
+        int budget = options.genPerTick;
+        int view = options.view;
+        // Ring by ring, so nearby chunks come first for every player
+        for (int ring = 0; ring <= view && budget > 0; ring++) {
+            for (Player player : players) {
+                int pcx = player.chunkX();
+                int pcz = player.chunkZ();
+                for (int dx = -ring; dx <= ring && budget > 0; dx++) {
+                    for (int dz = -ring; dz <= ring && budget > 0; dz++) {
+                        if (Math.max(Math.abs(dx), Math.abs(dz)) != ring) {
+                            continue;
+                        }
+                        long index = ChunkUtil.indexChunk(pcx + dx, pcz + dz);
+                        if (!loaded.containsKey(index) && chunksGenerated < options.chunks) {
+                            InMemoryChunk chunk = new InMemoryChunk(pcx + dx, pcz + dz, STONE, surfaceY(pcx + dx, pcz + dz));
+                            loaded.put(index, chunk);
+                            fresh.add(chunk);
+                            chunksGenerated++;
+                            budget--;
+                        }
+                    }
+                }
+            }
+        }
+        maxLoaded = Math.max(maxLoaded, loaded.size());
+    }
+
+    /**
+     * The plugin's pre-load hook, run on the world thread: scan, then either
+     * plan and apply right away, or plan on the pool (on the world thread
+     * when the pool is saturated) for a later drain.
+     * @return bytes the simulated chunk allocated for its own storage
+     */
+    private long preload(InMemoryChunk chunk) {
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
+        if (plans.resume(chunkX, chunkZ)) {
+            return 0L;
+        }
+        ChunkOccupancy occupancy = ChunkOccupancy.scan(chunk);
+        long seed = options.seed;
+        GenerationMode mode = options.mode;
+        if (options.applyInPreLoad) {
+            VeinPlan plan = planner.plan(mode, GenerationProfile.DEFAULT, seed, chunkX, chunkZ, occupancy);
+            generator.applyPlan(chunk, plan, pending, table);
+            return chunk.materializedSections() * SECTION_BYTES;
+        }
+        planning.incrementAndGet();
+        plannerPool.execute(() -> {
+            try {
+                metrics.maxQueueDepth.accumulate(plans.add(planner.plan(mode, GenerationProfile.DEFAULT, seed, chunkX, chunkZ, occupancy)));
+            } finally {
+                planning.decrementAndGet();
+            }
+        });
+        return 0L;
+    }
+
+    /**
+     * Rolling terrain with the odd ocean, so the occupancy scan and the
+     * vertical vein range both see varied chunks.
+     */
+    private int surfaceY(int chunkX, int chunkZ) {
+        long h = (chunkX * 0x9E3779B97F4A7C15L) ^ (chunkZ * 0xC2B2AE3D27D4EB4FL) ^ options.seed;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        int roll = (int) ((h >>> 1) % 100);
+        return roll < 8 ? 24 + roll : 48 + roll;
+    }
+
+    /**
+     * The scheduler's drain of deferred plans, through the same
+     * {@link ProximityPlanQueue#drain} it uses, applying into the simulated chunks.
+     * @return bytes the simulated chunks allocated for their own storage
+     */
+    private long drain(long deadline) {
+        drainStorage = 0;
+        for (int i = 0; i < players.size(); i++) {
+            playerChunkX[i] = players.get(i).chunkX();
+            playerChunkZ[i] = players.get(i).chunkZ();
+        }
+        plans.drain(playerChunkX, playerChunkZ, players.size(),
+            (chunkX, chunkZ) -> loaded.containsKey(ChunkUtil.indexChunk(chunkX, chunkZ)), this::applyPlan, deadline);
+        return drainStorage;
+    }
+
+    /**
+     * The plugin's deferred apply for one plan.
+     * @return false if the chunk has unloaded and the plan should be parked
+     */
+    private boolean applyPlan(VeinPlan plan) {
+        InMemoryChunk chunk = loaded.get(ChunkUtil.indexChunk(plan.chunkX, plan.chunkZ));
+        if (chunk == null) {
+            return false;
+        }
+        applyDistanceSum += nearestPlayerDistance(plan.chunkX, plan.chunkZ);
+        applyDistanceCount++;
+        int sections = chunk.materializedSections();
+        generator.applyPlan(chunk, plan, pending, table);
+        drainStorage += (chunk.materializedSections() - sections) * SECTION_BYTES;
+        return true;
+    }
+
+    /** Chebyshev chunk distance to the nearest player. */
+    private int nearestPlayerDistance(int chunkX, int chunkZ) {
+        int nearest = Integer.MAX_VALUE;
+        for (Player player : players) {
+            nearest = Math.min(nearest, Math.max(Math.abs(chunkX - player.chunkX()), Math.abs(chunkZ - player.chunkZ())));
+        }
+        return nearest;
+    }
+
+    private void unloadOutOfView() {
+        int keep = options.view + UNLOAD_MARGIN;
+        Iterator<InMemoryChunk> it = loaded.values().iterator();
+        while (it.hasNext()) {
+            InMemoryChunk chunk = it.next();
+            boolean inView = false;
+            for (Player player : players) {
+                if (Math.abs(chunk.getX() - player.chunkX()) <= keep && Math.abs(chunk.getZ() - player.chunkZ()) <= keep) {
+                    inView = true;
+                    break;
+                }
+            }
+            if (!inView) {
+                it.remove();
+                chunksUnloaded++;
+            }
+        }
+    }
+
+    private void recordTick(long nanos) {
+        if (ticks == tickNanos.length) {
+            tickNanos = Arrays.copyOf(tickNanos, ticks * 2);
+        }
+        tickNanos[ticks++] = nanos;
+    }
+
+    private String report(Measured m) {
+        long[] sorted = Arrays.copyOf(tickNanos, ticks);
+        Arrays.sort(sorted);
+        long bytesPerChunk = m.chunksApplied == 0 ? 0 : (m.worldAllocated + m.plannerAllocated) / m.chunksApplied;
+
+        System.out.printf(Locale.ROOT, "Ticks: %d in %.1f s, %d over budget%n", ticks, m.seconds, ticksOverBudget);
+        System.out.printf(Locale.ROOT, "Ore work per tick us: p50=%.1f p99=%.1f p999=%.1f max=%.1f%n",
+            percentile(sorted, 0.50) / 1e3, percentile(sorted, 0.99) / 1e3, percentile(sorted, 0.999) / 1e3,
+            (ticks == 0 ? 0 : sorted[ticks - 1]) / 1e3);
+        double applyDistance = applyDistanceCount == 0 ? 0 : (double) applyDistanceSum / applyDistanceCount;
+        System.out.printf(Locale.ROOT, "Chunks: %d generated (%.1f/s), %d applied (%.1f/s), %d parked, %d resumed, %d dropped, %d unloaded, max %d loaded%n",
+            m.chunksGenerated, m.chunksGenerated / m.seconds, m.chunksApplied, m.chunksApplied / m.seconds,
+            metrics.chunksParked.sum(), metrics.chunksResumed.sum(), metrics.chunksDropped.sum(), chunksUnloaded, maxLoaded);
+        System.out.printf(Locale.ROOT, "Deferred plans applied %.2f chunks from the nearest player on average%n", applyDistance);
+        System.out.printf(Locale.ROOT, "Allocated: %d KB world thread, %d KB planners, %d bytes per chunk; %d GCs (%d ms)%n",
+            m.worldAllocated >> 10, m.plannerAllocated >> 10, bytesPerChunk, m.gcCount, m.gcMillis);
+
+        CoalOreMetrics.Gauges gauges = new CoalOreMetrics.Gauges();
+        gauges.queueDepth = plans.size();
+        gauges.parkedChunks = plans.parked();
+        gauges.pendingChunks = pending.pendingChunks();
+        gauges.pendingBlocks = pending.pendingBlocks();
+        gauges.pendingEvictedBlocks = pending.evictedBlocks();
+        gauges.pendingDroppedBlocks = pending.droppedBlocks();
+
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\n");
+        sb.append("  \"options\": {");
+        string(sb, "path", options.path).append(", ");
+        string(sb, "mode", options.mode.name().toLowerCase(Locale.ROOT)).append(", ");
+        field(sb, "chunks", options.chunks).append(", ");
+        field(sb, "warmup", options.warmup).append(", ");
+        field(sb, "players", options.players).append(", ");
+        field(sb, "speed", options.speed).append(", ");
+        field(sb, "view", options.view).append(", ");
+        field(sb, "genPerTick", options.genPerTick).append(", ");
+        sb.append("\"applyInPreLoad\": ").append(options.applyInPreLoad).append(", ");
+        field(sb, "budgetMicros", options.budgetMicros).append(", ");
+        field(sb, "tickMillis", options.tickMillis).append(", ");
+        field(sb, "threads", options.threads).append(", ");
+        field(sb, "seed", options.seed);
+        sb.append("},\n");
+        sb.append("  \"tickImpactMicros\": {");
+        field(sb, "ticks", ticks).append(", ");
+        field(sb, "overBudget", ticksOverBudget).append(", ");
+        field(sb, "p50", percentile(sorted, 0.50) / 1e3).append(", ");
+        field(sb, "p99", percentile(sorted, 0.99) / 1e3).append(", ");
+        field(sb, "p999", percentile(sorted, 0.999) / 1e3).append(", ");
+        field(sb, "max", (ticks == 0 ? 0 : sorted[ticks - 1]) / 1e3);
+        sb.append("},\n");
+        sb.append("  \"throughput\": {");
+        field(sb, "seconds", m.seconds).append(", ");
+        field(sb, "chunksGenerated", m.chunksGenerated).append(", ");
+        field(sb, "chunksApplied", m.chunksApplied).append(", ");
+        field(sb, "chunksPerSecond", m.chunksApplied / m.seconds).append(", ");
+        field(sb, "chunksParked", metrics.chunksParked.sum()).append(", ");
+        field(sb, "chunksResumed", metrics.chunksResumed.sum()).append(", ");
+        field(sb, "chunksDropped", metrics.chunksDropped.sum()).append(", ");
+        field(sb, "chunksUnloaded", chunksUnloaded).append(", ");
+        field(sb, "meanApplyDistanceChunks", applyDistance).append(", ");
+        field(sb, "maxLoadedChunks", maxLoaded);
+        sb.append("},\n");
+        sb.append("  \"allocation\": {");
+        field(sb, "worldThreadBytes", m.worldAllocated).append(", ");
+        field(sb, "plannerBytes", m.plannerAllocated).append(", ");
+        field(sb, "bytesPerChunk", bytesPerChunk).append(", ");
+        field(sb, "simulatedStorageBytes", storageBytes).append(", ");
+        field(sb, "gcCount", m.gcCount).append(", ");
+        field(sb, "gcMillis", m.gcMillis);
+        sb.append("},\n");
+        sb.append("  \"metrics\": ").append(metrics.toJson(gauges)).append('\n');
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /** Nearest-rank percentile of sorted samples. */
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0L, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static StringBuilder field(StringBuilder sb, String name, long value) {
+        return sb.append('"').append(name).append("\": ").append(value);
+    }
+
+    private static StringBuilder field(StringBuilder sb, String name, double value) {
+        return sb.append('"').append(name).append("\": ").append(String.format(Locale.ROOT, "%.3f", value));
+    }
+
+    private static StringBuilder string(StringBuilder sb, String name, String value) {
+        return sb.append('"').append(name).append("\": \"").append(value).append('"');
+    }
+}
@@ -0,0 +1,78 @@
+package com.jordansbored.coalore;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Planning phase of natural generation (the old generateVeinInChunk): picks
+ * vein positions for a chunk and rasterizes them from the template library,
+ * or evaluates the noise field in noise mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VeinPlannerBenchmark {
+
+    private static final long WORLD_SEED = 1234567890L;
+
+    private VeinPlanner planner;
+    private NoiseOreField scalarNoise;
+    private int noiseSeed;
+    private final int[] masks = new int[32];
+    private ChunkOccupancy lowSurface;
+    private int next;
+
+    @Setup
+    public void setup() {
+        planner = new VeinPlanner(new CoalOreMetrics(), false);
+        scalarNoise = new NoiseOreField(NoiseOreField.scalarKernel(), VeinPlanner.MIN_Y, VeinPlanner.MAX_Y);
+        noiseSeed = NoiseOreField.seedFor(WORLD_SEED);
+        // Surface at y=40: veins rolled higher up get re-rolled or skipped
+        lowSurface = ChunkOccupancy.scan(new InMemoryChunk(0, 0, InMemoryWorld.STONE, 40));
+    }
+
+    @Benchmark
+    public VeinPlan planChunk() {
+        // Walk over chunk coordinates so every call plans a different chunk
+        int i = next++;
+        return planner.plan(GenerationProfile.DEFAULT, WORLD_SEED, i & 1023, i >> 10, null);
+    }
+
+    @Benchmark
+    public VeinPlan planChunkWithOccupancy() {
+        int i = next++;
+        return planner.plan(GenerationProfile.DEFAULT, WORLD_SEED, i & 1023, i >> 10, lowSurface);
+    }
+
+    /** Noise mode through the planner, with the Vector API kernel when the JVM has the module. */
+    @Benchmark
+    public VeinPlan planChunkNoise() {
+        int i = next++;
+        return planner.planNoise(GenerationProfile.DEFAULT, WORLD_SEED, i & 1023, i >> 10, null);
+    }
+
+    /** Noise field alone with the scalar kernel, to compare against planChunkNoise. */
+    @Benchmark
+    public int noiseChunkScalar() {
+        int i = next++;
+        int bits = 0;
+        for (int y = VeinPlanner.MIN_Y; y <= VeinPlanner.MAX_Y; y++) {
+            scalarNoise.layerMasks(noiseSeed, i & 1023, i >> 10, y, masks);
+            bits += masks[y & 31];
+        }
+        return bits;
+    }
+}
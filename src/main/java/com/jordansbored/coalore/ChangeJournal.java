@@ -0,0 +1,212 @@
+package com.jordansbored.coalore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact record of the blocks a command job replaced, so the job can be
+ * undone. Entries are grouped per chunk; each is the chunk-local block
+ * index ({@code y << 10 | z << 5 | x}) as a zigzag varint delta from the
+ * previous entry, followed by the original block id as a varint. Writes come
+ * out of the section batch writer in section order, so deltas are small and
+ * an entry is about three bytes. The bytes live in a direct buffer, off the
+ * heap.
+ *
+ * Not thread-safe; written and replayed on the world thread only.
+ */
+final class ChangeJournal {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    final int jobId;
+    final String worldName;
+
+    // Undo job replaying this journal, 0 if none was started
+    volatile int undoJobId;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    private int[] chunkOffsets = new int[64];
+    private int chunks;
+    private long entries;
+
+    // Chunk being written
+    private int chunkStart = -1;
+    private int countSlot;
+    private int chunkEntries;
+    private int previousIndex;
+
+    ChangeJournal(int jobId, String worldName) {
+        this.jobId = jobId;
+        this.worldName = worldName;
+    }
+
+    /**
+     * Start recording the replacements of one chunk.
+     */
+    void beginChunk(int chunkX, int chunkZ) {
+        chunkStart = buffer.position();
+        writeVarInt(zigzag(chunkX));
+        writeVarInt(zigzag(chunkZ));
+        ensure(4);
+        countSlot = buffer.position();
+        buffer.putInt(0);
+        chunkEntries = 0;
+        previousIndex = 0;
+    }
+
+    /**
+     * Record one replaced block of the current chunk.
+     * @param localIndex chunk-local index, {@code y << 10 | (z & 31) << 5 | (x & 31)}
+     */
+    void record(int localIndex, int originalBlockId) {
+        writeVarInt(zigzag(localIndex - previousIndex));
+        writeVarInt(originalBlockId);
+        previousIndex = localIndex;
+        chunkEntries++;
+    }
+
+    /**
+     * Finish the current chunk; a chunk without replacements leaves nothing behind.
+     */
+    void endChunk() {
+        if (chunkEntries == 0) {
+            buffer.position(chunkStart);
+        } else {
+            buffer.putInt(countSlot, chunkEntries);
+            if (chunks == chunkOffsets.length) {
+                chunkOffsets = Arrays.copyOf(chunkOffsets, chunks * 2);
+            }
+            chunkOffsets[chunks++] = chunkStart;
+            entries += chunkEntries;
+        }
+        chunkStart = -1;
+    }
+
+    int chunkCount() {
+        return chunks;
+    }
+
+    long entryCount() {
+        return entries;
+    }
+
+    /** Bytes held by the journal's entries. */
+    int sizeBytes() {
+        return buffer.position();
+    }
+
+    int chunkX(int chunk) {
+        return reader(chunk).nextSigned();
+    }
+
+    int chunkZ(int chunk) {
+        Reader reader = reader(chunk);
+        reader.nextSigned();
+        return reader.nextSigned();
+    }
+
+    /**
+     * Put back the original blocks of one recorded chunk, section by section,
+     * where the block is still a coal ore (anything changed since is left alone).
+     * @return the number of blocks restored
+     */
+    int restore(int chunk, OreChunk target, OreVariantTable table) {
+        Reader reader = reader(chunk);
+        reader.nextSigned();
+        reader.nextSigned();
+        int count = buffer.getInt(reader.position);
+        reader.position += 4;
+
+        int restored = 0;
+        int index = 0;
+        int currentSectionY = -1;
+        OreSection section = null;
+        int sectionRestored = 0;
+        for (int i = 0; i < count; i++) {
+            index += reader.nextSigned();
+            int original = reader.nextVarInt();
+            int sectionY = index >> 15;
+            if (sectionY != currentSectionY) {
+                if (section != null && sectionRestored > 0) {
+                    section.invalidate();
+                }
+                currentSectionY = sectionY;
+                section = target.section(sectionY);
+                sectionRestored = 0;
+            }
+            if (section == null) {
+                continue;
+            }
+            int x = index & 31;
+            int y = (index >> 10) & 31;
+            int z = (index >> 5) & 31;
+            if (table.variantOf(section.get(x, y, z)) != OreVariantTable.NOT_REPLACEABLE && section.set(x, y, z, original)) {
+                sectionRestored++;
+                restored++;
+            }
+        }
+        if (section != null && sectionRestored > 0) {
+            section.invalidate();
+        }
+        if (restored > 0) {
+            target.markNeedsSaving();
+        }
+        return restored;
+    }
+
+    private Reader reader(int chunk) {
+        return new Reader(chunkOffsets[chunk]);
+    }
+
+    private void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Cursor over the journal bytes by absolute position, so replay does not
+     * disturb the write position.
+     */
+    private final class Reader {
+        int position;
+
+        Reader(int position) {
+            this.position = position;
+        }
+
+        int nextVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        int nextSigned() {
+            int raw = nextVarInt();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.jordansbored.coalore;
+
+/**
+ * Cheap summary of where a chunk can hold ore, read once before planning:
+ * which sections contain anything but air, and the highest surface block in
+ * each 4x4 group of columns. Veins whose whole footprint lies above the
+ * surface or in all-air sections cannot place a block, so the planner skips
+ * or re-rolls them before any block is read.
+ *
+ * Immutable once scanned; built on the chunk thread and read by planners.
+ */
+final class ChunkOccupancy {
+
+    private static final int GROUP_SHIFT = 2;
+    private static final int GROUPS = 32 >> GROUP_SHIFT;
+
+    // Bit s set when section s holds at least one non-air block
+    private final int solidSections;
+    private final short[] groupMaxHeight;
+    private final int maxHeight;
+
+    private ChunkOccupancy(int solidSections, short[] groupMaxHeight) {
+        this.solidSections = solidSections;
+        this.groupMaxHeight = groupMaxHeight;
+        int max = 0;
+        for (short height : groupMaxHeight) {
+            max = Math.max(max, height);
+        }
+        this.maxHeight = max;
+    }
+
+    /**
+     * Read section air flags and the heightmap of a chunk.
+     */
+    static ChunkOccupancy scan(OreChunk chunk) {
+        int solidSections = 0;
+        for (int sy = 0; sy < SectionBatchWriter.SECTION_COUNT; sy++) {
+            OreSection section = chunk.section(sy);
+            if (section != null && !section.isAir()) {
+                solidSections |= 1 << sy;
+            }
+        }
+
+        short[] groupMaxHeight = new short[GROUPS * GROUPS];
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                int group = (x >> GROUP_SHIFT) * GROUPS + (z >> GROUP_SHIFT);
+                groupMaxHeight[group] = (short) Math.max(groupMaxHeight[group], chunk.height(x, z));
+            }
+        }
+        return new ChunkOccupancy(solidSections, groupMaxHeight);
+    }
+
+    /**
+     * Whether anything at height y can be non-air: its section is not all
+     * air and some column group reaches it.
+     */
+    boolean mayHoldLayer(int y) {
+        if ((y >> 5) >= SectionBatchWriter.SECTION_COUNT || (solidSections & (1 << (y >> 5))) == 0) {
+            return false;
+        }
+        return y <= maxHeight;
+    }
+
+    /**
+     * Bit x set for every chunk-local column x in row z that may hold a
+     * non-air block at height y: its section is not all air and the surface
+     * of its column group reaches y.
+     */
+    int columnMask(int y, int localZ) {
+        if ((y >> 5) >= SectionBatchWriter.SECTION_COUNT || (solidSections & (1 << (y >> 5))) == 0) {
+            return 0;
+        }
+        int mask = 0;
+        int row = (localZ >> GROUP_SHIFT);
+        for (int gx = 0; gx < GROUPS; gx++) {
+            if (groupMaxHeight[gx * GROUPS + row] >= y) {
+                mask |= 0xF << (gx << GROUP_SHIFT);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Whether a vein reaching {@code reach} blocks around the given chunk-local
+     * center could touch a non-air block below the surface. Parts of the vein
+     * outside this chunk are not judged and count as possible.
+     */
+    boolean mayHoldVein(int localX, int y, int localZ, int reach) {
+        // Checked first: the neighbour's terrain may be solid where this chunk's is air
+        if (localX - reach < 0 || localX + reach > 31 || localZ - reach < 0 || localZ + reach > 31) {
+            return true; // spills into a neighbour we know nothing about
+        }
+
+        int minY = Math.max(0, y - reach);
+        int maxY = y + reach;
+        int sections = 0;
+        for (int sy = minY >> 5; sy <= maxY >> 5 && sy < SectionBatchWriter.SECTION_COUNT; sy++) {
+            sections |= 1 << sy;
+        }
+        if ((solidSections & sections) == 0) {
+            return false;
+        }
+
+        for (int gx = (localX - reach) >> GROUP_SHIFT; gx <= (localX + reach) >> GROUP_SHIFT; gx++) {
+            for (int gz = (localZ - reach) >> GROUP_SHIFT; gz <= (localZ + reach) >> GROUP_SHIFT; gz++) {
+                if (groupMaxHeight[gx * GROUPS + gz] >= minY) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
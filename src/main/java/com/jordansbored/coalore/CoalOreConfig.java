@@ -0,0 +1,168 @@
+package com.jordansbored.coalore;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Plugin settings read from {@code coalore.properties} in the plugin data
+ * directory. Missing keys fall back to their defaults, and the file is
+ * (re)written whenever keys are missing so every setting is easy to find.
+ */
+final class CoalOreConfig {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    static final String FILE_NAME = "coalore.properties";
+
+    private final Properties properties;
+    private boolean missingKeys;
+
+    // Off-thread vein planning
+    final int plannerThreads;
+    final int plannerQueueCapacity;
+
+    // Per-tick apply budget on the world thread
+    final int schedulerBudgetMicros;
+    final int schedulerTickMillis;
+
+    // Add coal to chunks loaded from disk that never got any
+    final boolean retrogenEnabled;
+
+    // Blob veins or noise seams; generation.mode.<world> overrides it per world
+    final GenerationMode generationMode;
+
+    // Leave new chunks whose biome the asset pack already gives coal to the native generator
+    final boolean nativeOnly;
+
+    // Plan and write a chunk's coal inside the pre-load hook instead of on a later world tick
+    final boolean applyInPreLoad;
+
+    // Chunk loads per second requested by /coalore pregen, per world
+    final int pregenChunksPerSecond;
+
+    // Diagnostics
+    final boolean debugLogging;
+    final int metricsSnapshotSeconds;
+
+    private CoalOreConfig(Properties properties) {
+        this.properties = properties;
+        this.plannerThreads = getInt("planner.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 4), 1, 64);
+        this.plannerQueueCapacity = getInt("planner.queueCapacity", 256, 1, 65536);
+        this.schedulerBudgetMicros = getInt("scheduler.budgetMicros", 2000, 50, 50000);
+        this.schedulerTickMillis = getInt("scheduler.tickMillis", 33, 5, 1000);
+        this.retrogenEnabled = getBoolean("retrogen.enabled", false);
+        this.generationMode = getMode("generation.mode", GenerationMode.BLOB);
+        this.nativeOnly = getBoolean("generation.nativeOnly", false);
+        this.applyInPreLoad = getBoolean("generation.applyInPreLoad", true);
+        this.pregenChunksPerSecond = getInt("pregen.chunksPerSecond", 32, 1, 1000);
+        this.debugLogging = getBoolean("debug.logVeins", false);
+        this.metricsSnapshotSeconds = getInt("metrics.snapshotSeconds", 60, 0, 86400);
+    }
+
+    /**
+     * Load the config from the data directory, creating it with defaults if it does not exist.
+     */
+    static CoalOreConfig load(Path dataDirectory) {
+        Path file = dataDirectory.resolve(FILE_NAME);
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                LOGGER.atWarning().withCause(e).log("Could not read %s, using defaults", file);
+            }
+        }
+
+        CoalOreConfig config = new CoalOreConfig(properties);
+        if (config.missingKeys) {
+            config.save(file);
+        }
+        return config;
+    }
+
+    private void save(Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Coal Ore plugin settings");
+            }
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not write default config to %s", file);
+        }
+    }
+
+    /**
+     * Read an int setting, clamped to [min, max]; records the effective value
+     * so it shows up when the defaults are saved.
+     */
+    private int getInt(String key, int def, int min, int max) {
+        int value = def;
+        String raw = properties.getProperty(key);
+        if (raw == null) {
+            missingKeys = true;
+        } else {
+            try {
+                value = Integer.parseInt(raw.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.atWarning().log("Invalid value '%s' for %s, using %d", raw, key, def);
+            }
+        }
+        value = Math.max(min, Math.min(max, value));
+        properties.setProperty(key, Integer.toString(value));
+        return value;
+    }
+
+    /**
+     * Generation mode for a world: {@code generation.mode.<world>} if set and
+     * valid, otherwise {@code generation.mode}.
+     */
+    GenerationMode generationMode(String worldName) {
+        String raw = properties.getProperty("generation.mode." + worldName);
+        if (raw == null) {
+            return generationMode;
+        }
+        GenerationMode mode = GenerationMode.parse(raw);
+        if (mode == null) {
+            LOGGER.atWarning().log("Invalid value '%s' for generation.mode.%s, using %s", raw, worldName, generationMode);
+            return generationMode;
+        }
+        return mode;
+    }
+
+    private GenerationMode getMode(String key, GenerationMode def) {
+        String raw = properties.getProperty(key);
+        GenerationMode value = def;
+        if (raw == null) {
+            missingKeys = true;
+        } else {
+            GenerationMode parsed = GenerationMode.parse(raw);
+            if (parsed == null) {
+                LOGGER.atWarning().log("Invalid value '%s' for %s, using %s", raw, key, def);
+            } else {
+                value = parsed;
+            }
+        }
+        properties.setProperty(key, value.name().toLowerCase(Locale.ROOT));
+        return value;
+    }
+
+    private boolean getBoolean(String key, boolean def) {
+        String raw = properties.getProperty(key);
+        boolean value = def;
+        if (raw == null) {
+            missingKeys = true;
+        } else {
+            value = Boolean.parseBoolean(raw.trim());
+        }
+        properties.setProperty(key, Boolean.toString(value));
+        return value;
+    }
+}
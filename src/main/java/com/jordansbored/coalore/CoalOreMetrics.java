@@ -0,0 +1,121 @@
+package com.jordansbored.coalore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead counters and latency histograms for ore generation. Every
+ * update is a lock-free add, so it is cheap enough to stay on in the hot
+ * path; read it through {@code /coalore stats} or the periodic snapshot file.
+ */
+final class CoalOreMetrics {
+
+    // Planning phase (worker threads)
+    final LatencyHistogram planTime = new LatencyHistogram();
+    final LongAdder chunksPlanned = new LongAdder();
+    final LongAdder veinsPlanned = new LongAdder();
+    final LongAdder candidates = new LongAdder();
+    final LongAdder veinsRerolled = new LongAdder();
+    final LongAdder veinsSkipped = new LongAdder();
+
+    // Apply phase (world thread)
+    final LatencyHistogram applyTime = new LatencyHistogram();
+    final LongAdder chunksApplied = new LongAdder();
+    final LongAdder chunksDropped = new LongAdder();
+    final LongAdder chunksParked = new LongAdder();
+    final LongAdder chunksResumed = new LongAdder();
+    final LongAdder blocksPlaced = new LongAdder();
+    final LongAdder writeFailures = new LongAdder();
+    final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0L);
+
+    // Command-driven placement
+    final LongAdder commandBlocksPlaced = new LongAdder();
+
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * Values read at snapshot time from components that own them.
+     */
+    static final class Gauges {
+        int queueDepth;
+        int parkedChunks;
+        int pendingChunks;
+        int pendingBlocks;
+        long pendingEvictedBlocks;
+        long pendingDroppedBlocks;
+    }
+
+    /**
+     * Human-readable lines for the stats command.
+     */
+    List<String> formatLines(Gauges gauges) {
+        List<String> lines = new ArrayList<>();
+        lines.add("Coal Ore stats (uptime " + (System.currentTimeMillis() - startedAt) / 1000L + "s)");
+        lines.add("Planned: " + chunksPlanned.sum() + " chunks, " + veinsPlanned.sum() + " veins, "
+            + candidates.sum() + " candidate blocks, " + veinsRerolled.sum() + " re-rolls, "
+            + veinsSkipped.sum() + " veins skipped (no solid ground)");
+        lines.add("Plan time us: " + formatHistogram(planTime));
+        lines.add("Applied: " + chunksApplied.sum() + " chunks, " + blocksPlaced.sum() + " blocks placed, "
+            + chunksDropped.sum() + " chunks dropped, " + writeFailures.sum() + " write failures");
+        lines.add("Apply time us: " + formatHistogram(applyTime));
+        lines.add("Queue depth: " + gauges.queueDepth + " (max " + maxQueueDepth.get() + "), " + gauges.parkedChunks
+            + " parked for unloaded chunks (" + chunksParked.sum() + " parked, " + chunksResumed.sum() + " resumed)");
+        lines.add("Carry-over: " + gauges.pendingChunks + " chunks, " + gauges.pendingBlocks + " blocks, "
+            + gauges.pendingEvictedBlocks + " evicted, " + gauges.pendingDroppedBlocks + " dropped");
+        lines.add("Command blocks placed: " + commandBlocksPlaced.sum());
+        return lines;
+    }
+
+    /**
+     * Machine-readable snapshot for periodic export.
+     */
+    String toJson(Gauges gauges) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append('{');
+        field(sb, "timestamp", System.currentTimeMillis()).append(',');
+        field(sb, "chunksPlanned", chunksPlanned.sum()).append(',');
+        field(sb, "veinsPlanned", veinsPlanned.sum()).append(',');
+        field(sb, "candidates", candidates.sum()).append(',');
+        field(sb, "veinsRerolled", veinsRerolled.sum()).append(',');
+        field(sb, "veinsSkipped", veinsSkipped.sum()).append(',');
+        histogram(sb, "planTimeMicros", planTime).append(',');
+        field(sb, "chunksApplied", chunksApplied.sum()).append(',');
+        field(sb, "chunksDropped", chunksDropped.sum()).append(',');
+        field(sb, "chunksParked", chunksParked.sum()).append(',');
+        field(sb, "chunksResumed", chunksResumed.sum()).append(',');
+        field(sb, "blocksPlaced", blocksPlaced.sum()).append(',');
+        field(sb, "writeFailures", writeFailures.sum()).append(',');
+        histogram(sb, "applyTimeMicros", applyTime).append(',');
+        field(sb, "queueDepth", gauges.queueDepth).append(',');
+        field(sb, "maxQueueDepth", maxQueueDepth.get()).append(',');
+        field(sb, "parkedChunks", gauges.parkedChunks).append(',');
+        field(sb, "pendingChunks", gauges.pendingChunks).append(',');
+        field(sb, "pendingBlocks", gauges.pendingBlocks).append(',');
+        field(sb, "pendingEvictedBlocks", gauges.pendingEvictedBlocks).append(',');
+        field(sb, "pendingDroppedBlocks", gauges.pendingDroppedBlocks).append(',');
+        field(sb, "commandBlocksPlaced", commandBlocksPlaced.sum());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static String formatHistogram(LatencyHistogram h) {
+        return "n=" + h.count() + " mean=" + h.meanMicros() + " p50<=" + h.percentileMicros(0.50)
+            + " p99<=" + h.percentileMicros(0.99) + " max=" + h.maxMicros();
+    }
+
+    private static StringBuilder field(StringBuilder sb, String name, long value) {
+        return sb.append('"').append(name).append("\":").append(value);
+    }
+
+    private static StringBuilder histogram(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append('"').append(name).append("\":{");
+        field(sb, "count", h.count()).append(',');
+        field(sb, "mean", h.meanMicros()).append(',');
+        field(sb, "p50", h.percentileMicros(0.50)).append(',');
+        field(sb, "p99", h.percentileMicros(0.99)).append(',');
+        field(sb, "max", h.maxMicros());
+        return sb.append('}');
+    }
+}
@@ -1,12 +1,28 @@
 package com.jordansbored.coalore;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
@@ -18,7 +34,6 @@ import com.hypixel.hytale.math.util.ChunkUtil;
 import com.hypixel.hytale.math.vector.Vector3d;
 import com.hypixel.hytale.protocol.GameMode;
 import com.hypixel.hytale.server.core.Message;
-import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
 import com.hypixel.hytale.server.core.command.system.CommandContext;
 import com.hypixel.hytale.server.core.command.system.arguments.system.DefaultArg;
 import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
@@ -35,45 +50,120 @@ import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 
 /**
  * Coal Ore Plugin - Spawns coal ore veins naturally during world generation
- * Just be aware i started learning java the day hytale came out and i've been using alot of ai to speed learn so dont use this as the basis for alot 
- * currently it will cause between 150-500ms chunk generation slowdowns depending on how many veins spawn thats between 1-3 veins per chunk
+ * Veins are cut from prebuilt templates and planned from the chunk coordinates
+ * and world seed, then written one section at a time, either inside the chunk
+ * pre-load hook or on the world thread within a small per-tick budget
+ * (generation.applyInPreLoad). Blocks that spill over a chunk border wait for
+ * the neighbouring chunk instead of being clipped.
  * 
  * Natural Generation:
  * - Automatically generates coal ore veins when new chunks are created
- * - Ore spawns between Y=10 and Y=80, with higher density at lower levels
+ * - Ore spawns between Y=10 and Y=90 by default, with higher density at lower levels
+ * - Vein count, size and height can be tuned per zone or biome in profiles.properties
  * - Replaces stone-like blocks only
  * 
  * Commands (Creative mode):
  * - /coalore spawn [size] - Spawns a coal ore vein at your location
- * - /coalore generate [radius] [count] - Generates multiple veins in an area
- * - /coalore fill [radius] - Fills underground areas with coal ore veins
+ * - /coalore generate [radius] [count] - Generates multiple veins in an area (background job)
+ * - /coalore fill [radius] - Fills underground areas with coal ore veins (background job)
+ * - /coalore scan [radius] - Counts coal ore per variant and height band in nearby chunks (background job)
+ * - /coalore purge [radius] [confirm] - Turns all coal ore in nearby chunks back into its host rock, natively generated included (background job)
+ * - /coalore locate [radius] - Lists the nearest generated veins from the vein index
+ * - /coalore undo [id] - Reverts a generate/fill job from its change journal (background job)
+ * - /coalore pregen [radius] - Loads and ores every chunk in a radius ahead of players, resumable (background job)
+ * - /coalore jobs - Lists running generate/fill/scan/purge/undo/pregen jobs
+ * - /coalore cancel [id] - Cancels a job (0 = the newest one)
+ * - /coalore stats - Shows generation counters and timings
  */
 public class CoalOrePlugin extends JavaPlugin {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
     
-    // Coal ore block ID - defined in our pack as Ore_Coal_Stone
-    private static final String COAL_ORE_BLOCK = "Ore_Coal_Stone";
-    private static final String STONE_BLOCK = "Rock_Stone";
-    
-    // Generation settings
-    private static final int MIN_Y = 10;
-    private static final int MAX_Y = 90;
-    private static final int VEINS_PER_CHUNK = 5;  // Average veins per chunk 
-    private static final int MIN_VEIN_SIZE = 3;
-    private static final int MAX_VEIN_SIZE = 7;
-    private static final double SPAWN_CHANCE = 0.9; // 90% chance per chunk to spawn any veins
-    
-    private final Random random = new Random();
-    
-    // Cached block IDs for performance (initialized on first use)
-    private int coalOreId = Integer.MIN_VALUE;
-    private BlockType coalOreType = null;
-    private int stoneId = Integer.MIN_VALUE;
-    private Set<Integer> replaceableBlockIds = null;
+    private static final String METRICS_SNAPSHOT_FILE = "metrics.json";
+    
+    // How often processed-chunk bitmaps, vein index regions and pregen checkpoints are pushed to disk
+    private static final long INDEX_FLUSH_MILLIS = 30_000L;
+    private static final long INDEX_SHUTDOWN_SECONDS = 10L;
+    
+    // Change journals kept for /coalore undo; older ones are dropped
+    private static final int MAX_JOURNALS = 16;
+    
+    // Set once the plugin is constructed, for other plugins using the query API
+    private static volatile CoalOrePlugin instance;
+    
+    // Counters and latency histograms, readable through /coalore stats
+    private final CoalOreMetrics metrics = new CoalOreMetrics();
+    
+    // Chunk adapters for the occupancy scan and the apply step, one per thread
+    private final ThreadLocal<WorldChunkAdapter> chunkAdapters = ThreadLocal.withInitial(WorldChunkAdapter::new);
+    
+    // Per-vein/per-chunk log lines, only when debug.logVeins is set
+    private boolean debugLogging;
+    
+    // Pure vein planning for natural generation (builds the template library at startup)
+    private VeinPlanner planner;
+    
+    // Writes planned and command-spawned veins into chunks
+    private OreGenerator generator;
+    
+    // Counts and removes existing coal ore for the scan/purge commands
+    private SectionScanner scanner;
+    
+    // Worker pool that runs the planning phase off the world thread
+    private ThreadPoolExecutor plannerPool;
+    
+    // Applies planned chunks on each world thread within a per-tick budget
+    private OreGenerationScheduler scheduler;
+    
+    // Single thread that reads and writes vein index regions, for all worlds
+    private ExecutorService indexIo;
+    
+    // Whether chunks loaded from disk without coal get it now (retrogen.enabled)
+    private boolean retrogenEnabled;
+    
+    // Skip new chunks in biomes covered by the compiled native assignments (generation.nativeOnly)
+    private boolean nativeOnly;
+    
+    // Write coal while the chunk is still loading rather than on a later tick (generation.applyInPreLoad)
+    private boolean applyInPreLoad;
+    
+    // Loaded settings; read again for per-world values such as the generation mode
+    private CoalOreConfig config;
+    
+    // Mode, carry-over store, indexes and counters per world name, created on first use
+    private final Map<String, WorldGenContext> worlds = new ConcurrentHashMap<>();
+    
+    // Per-zone/per-biome vein settings from profiles.properties
+    private GenerationProfiles profiles;
+    
+    // What the most recent generate/fill jobs replaced, by job id, oldest first
+    private final Map<Integer, ChangeJournal> journals = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ChangeJournal> eldest) {
+            return size() > MAX_JOURNALS;
+        }
+    });
+    
+    // Ore and profile tables, built once on first use and then only read
+    private volatile BlockTables tables = null;
+    
+    /**
+     * Host block id -> ore variant and environment -> profile tables,
+     * published together as one immutable object.
+     */
+    private static final class BlockTables {
+        final OreVariantTable ores;
+        final GenerationProfiles.Table profiles;
+        
+        BlockTables(OreVariantTable ores, GenerationProfiles.Table profiles) {
+            this.ores = ores;
+            this.profiles = profiles;
+        }
+    }
 
     public CoalOrePlugin(@Nonnull JavaPluginInit init) {
         super(init);
+        instance = this;
         LOGGER.atInfo().log("Coal Ore plugin loaded - version " + this.getManifest().getVersion().toString());
     }
 
@@ -81,6 +171,29 @@ public class CoalOrePlugin extends JavaPlugin {
     protected void setup() {
         LOGGER.atInfo().log("Setting up Coal Ore plugin...");
         
+        config = CoalOreConfig.load(this.getDataDirectory());
+        debugLogging = config.debugLogging;
+        retrogenEnabled = config.retrogenEnabled;
+        nativeOnly = config.nativeOnly;
+        applyInPreLoad = config.applyInPreLoad;
+        profiles = GenerationProfiles.load(this.getDataDirectory());
+        planner = new VeinPlanner(metrics, debugLogging, profiles.minVeinSize(), profiles.maxVeinSize(), profiles.minY(), profiles.maxY());
+        generator = new OreGenerator(metrics, debugLogging);
+        scanner = SectionScanner.create();
+        plannerPool = createPlannerPool(config.plannerThreads, config.plannerQueueCapacity);
+        indexIo = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CoalOre-VeinIndex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = new OreGenerationScheduler(this::applyPlan, metrics,
+            TimeUnit.MICROSECONDS.toNanos(config.schedulerBudgetMicros), config.schedulerTickMillis);
+        if (config.metricsSnapshotSeconds > 0) {
+            Path snapshotFile = this.getDataDirectory().resolve(METRICS_SNAPSHOT_FILE);
+            scheduler.every(TimeUnit.SECONDS.toMillis(config.metricsSnapshotSeconds), () -> exportMetrics(snapshotFile));
+        }
+        scheduler.every(INDEX_FLUSH_MILLIS, this::flushIndexes);
+        
         // Register chunk generation event for natural ore spawning
         // Use LATE priority so terrain is fully generated before we add ores
         this.getEventRegistry().registerGlobal(
@@ -93,253 +206,551 @@ public class CoalOrePlugin extends JavaPlugin {
         this.getCommandRegistry().registerCommand(new CoalOreCommand());
         
         LOGGER.atInfo().log("Coal Ore plugin setup complete!");
-        LOGGER.atInfo().log("  - Natural generation: ENABLED (Y=" + MIN_Y + " to Y=" + MAX_Y + ", ~" + VEINS_PER_CHUNK + " veins/chunk)");
-        LOGGER.atInfo().log("  - Commands: /coalore spawn|generate|fill");
+        LOGGER.atInfo().log("  - Vein templates: %d per size (%d-%d)", VeinPlanner.TEMPLATES_PER_SIZE, profiles.minVeinSize(), profiles.maxVeinSize());
+        LOGGER.atInfo().log("  - Natural generation: ENABLED, default profile %s", profiles.defaults());
+        LOGGER.atInfo().log("  - Generation profiles: %d (see %s)", profiles.profileCount(), GenerationProfiles.FILE_NAME);
+        LOGGER.atInfo().log("  - Default generation mode: %s (noise kernel: %s)", config.generationMode,
+            planner.isNoiseVectorized() ? "Vector API" : "scalar");
+        LOGGER.atInfo().log("  - Retrogen for existing chunks: %s", retrogenEnabled ? "ENABLED" : "disabled");
+        LOGGER.atInfo().log("  - Native-only biomes: %s", nativeOnly ? "ENABLED" : "disabled");
+        LOGGER.atInfo().log("  - Planner pool: %d threads, queue %d", config.plannerThreads, config.plannerQueueCapacity);
+        LOGGER.atInfo().log("  - Apply budget: %d us every %d ms per world", config.schedulerBudgetMicros, config.schedulerTickMillis);
+        LOGGER.atInfo().log("  - Pregen: up to %d chunks/s per world", config.pregenChunksPerSecond);
+        LOGGER.atInfo().log("  - Section scans: %s", scanner.isVectorized() ? "Vector API" : "scalar");
+        LOGGER.atInfo().log("  - Commands: /coalore spawn|generate|fill|scan|purge|locate|undo|pregen|jobs|cancel|stats");
+    }
+    
+    @Override
+    protected void start() {
+        scheduler.start();
+        // Build the tables now if the assets are ready, so no chunk pays for it
+        if (tables() == null) {
+            LOGGER.atInfo().log("Block assets not loaded yet; ore tables will be built on first use");
+        }
+        logPregenCheckpoints();
     }
     
     /**
-     * Called when a chunk is about to be loaded. If it's newly generated,
-     * we add coal ore veins to it.
+     * Point out pregen runs that a restart interrupted; they continue with
+     * /coalore pregen in their world.
      */
-    private void onChunkGenerated(@Nonnull ChunkPreLoadProcessEvent event) {
-        // Only process newly generated chunks, not chunks loaded from disk
-        if (!event.isNewlyGenerated()) {
+    private void logPregenCheckpoints() {
+        Path directory = this.getDataDirectory().resolve(WorldGenContext.PREGEN_DIRECTORY);
+        if (!Files.isDirectory(directory)) {
             return;
         }
-        
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".properties")).forEach(file -> {
+                PregenRun run = PregenRun.resume(file, config.pregenChunksPerSecond);
+                if (run != null) {
+                    String name = file.getFileName().toString();
+                    LOGGER.atInfo().log("Pregen in world %s stopped at chunk %d of %d; run /coalore pregen there to resume",
+                        name.substring(0, name.length() - ".properties".length()), run.firstIndex, run.totalChunks);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not list pregen checkpoints in %s", directory);
+        }
+    }
+    
+    @Override
+    protected void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (plannerPool != null) {
+            plannerPool.shutdownNow();
+        }
+        try {
+            flushIndexes().get(INDEX_SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.atWarning().withCause(e).log("Vein index was not fully written on shutdown");
+        }
+        if (indexIo != null) {
+            indexIo.shutdown();
+        }
+    }
+    
+    /**
+     * The running plugin instance, or null before it is loaded.
+     */
+    public static CoalOrePlugin getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Generated veins whose center is within {@code radius} blocks of a
+     * position, nearest first, from the vein index. Reads no chunk data and
+     * may be called from any thread, but blocks while index regions that are
+     * not in memory are read; see {@link #findVeinsAsync}.
+     * @param limit maximum number of veins returned
+     */
+    public List<OreVein> findVeins(World world, int x, int y, int z, int radius, int limit) {
+        return findVeinsAsync(world, x, y, z, radius, limit).join();
+    }
+    
+    /**
+     * Like {@link #findVeins}, without blocking: completes once the index
+     * regions involved are in memory, on the index's I/O thread if any had to
+     * be read.
+     */
+    public CompletableFuture<List<OreVein>> findVeinsAsync(World world, int x, int y, int z, int radius, int limit) {
+        BlockTables current = tables;
+        return context(world).veins.near(x, y, z, Math.max(0, radius), Math.max(0, limit), current == null ? null : current.ores);
+    }
+    
+    /**
+     * Bounded pool for vein planning. When the queue is full the submitting
+     * thread plans the chunk itself, which slows chunk generation down
+     * instead of letting planned work pile up.
+     */
+    private static ThreadPoolExecutor createPlannerPool(int threads, int queueCapacity) {
+        AtomicInteger threadIds = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "CoalOre-Planner-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    
+    /**
+     * Called when a chunk is about to be loaded. If it's newly generated (or,
+     * with retrogen, loaded from disk without coal yet), we plan its coal ore
+     * veins and write them straight into the chunk before it is ticked, saved
+     * or sent. With generation.applyInPreLoad off, the plan is made on the
+     * planner pool instead and the scheduler applies it on the world thread
+     * within the tick budget, nearest to a player first; a plan whose chunk
+     * unloaded before its turn is resumed here when the chunk loads again,
+     * or handed to pregen if pregen loaded it. Chunks loaded by /coalore
+     * pregen, existing ones included, are always planned on the planner pool;
+     * the pregen job writes the plan once the load has finished.
+     */
+    private void onChunkGenerated(@Nonnull ChunkPreLoadProcessEvent event) {
         WorldChunk chunk = event.getChunk();
         if (chunk == null) {
             return;
         }
         
-        // Initialize block IDs on first use
-        if (!initializeBlockIds()) {
+        World world = chunk.getWorld();
+        WorldGenContext context = context(world);
+        PregenRun pregen = context.pregen;
+        boolean pregenerating = pregen != null && pregen.isRequested(chunk.getX(), chunk.getZ());
+        // A plan parked when this chunk unloaded last time picks up where it left off. Pregen
+        // writes it itself once the load is done: back in the queue it could park again
+        // after the pregen step had already counted the chunk as done.
+        if (pregenerating) {
+            VeinPlan parked = scheduler.takeParked(world, chunk.getX(), chunk.getZ());
+            if (parked != null) {
+                pregen.planned(chunk.getX(), chunk.getZ(), CompletableFuture.completedFuture(parked));
+                return;
+            }
+            if (scheduler.hasPlan(world, chunk.getX(), chunk.getZ())) {
+                return; // queued or being made; the pregen step takes it once the load is done
+            }
+        } else if (scheduler.resume(world, chunk.getX(), chunk.getZ())) {
             return;
         }
         
-        // Get chunk coordinates (block coordinates of chunk corner)
-        int chunkX = chunk.getX() << 5;  // Multiply by 32 (chunk size)
-        int chunkZ = chunk.getZ() << 5;
+        boolean retrogen = !event.isNewlyGenerated();
+        if (retrogen && !retrogenEnabled && !pregenerating) {
+            return;
+        }
         
-        // Create a seeded random for this chunk so generation is deterministic
-        long chunkSeed = ((long) chunk.getX() * 341873128712L) + ((long) chunk.getZ() * 132897987541L);
-        Random chunkRandom = new Random(chunkSeed);
+        // Existing chunks only once; the deferred path checks again before applying
+        if (retrogen && context.processed.isProcessed(chunk.getX(), chunk.getZ())) {
+            return;
+        }
         
-        // Chance for this chunk to have any coal ore at all
-        if (chunkRandom.nextDouble() > SPAWN_CHANCE) {
-            return; // No coal ore in this chunk
+        BlockTables tables = tables();
+        if (tables == null) {
+            return;
         }
         
-        int totalPlaced = 0;
-        int veinsCreated = 0;
+        // Planning only needs the chunk coordinates, its profile and a small occupancy
+        // summary (section air flags + heightmap) read here once.
+        WorldChunkAdapter adapter = chunkAdapters.get().wrapLoading(chunk);
+        int environment = GenerationProfiles.Table.environmentOf(adapter);
         
-        // Generate veins in this chunk (1-3 veins when spawning)
-        int numVeins = VEINS_PER_CHUNK + chunkRandom.nextInt(2); // 2-3 veins
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
         
-        // Use a seeded Random based on chunk coordinates so generation is deterministic.
-        // We'll perform a lightweight check now and defer the heavy placement work
-        // to `world.execute(...)` so we do not block the chunk pre-load process hook.
-        Random seedRand = new Random(chunkSeed);
-        double roll = seedRand.nextDouble();
-        if (roll > SPAWN_CHANCE) {
-            return; // No coal ore in this chunk
+        // The engine already placed this chunk's coal through the pack's assignments.
+        // Mark it processed so neither retrogen nor pregen adds ours on top later;
+        // chunks generated before the pack was installed never got it, so retrogen still runs.
+        if (nativeOnly && !retrogen && tables.profiles.isNative(environment)) {
+            context.processed.markProcessed(chunkX, chunkZ);
+            return;
         }
-
-        // Determine number of veins using the same seeded RNG
-        int numVeinsLocal = VEINS_PER_CHUNK + seedRand.nextInt(2);
-
-        // Capture values needed in the deferred task
-        final int fChunkX = chunkX;
-        final int fChunkZ = chunkZ;
-        final int fChunkCoordX = chunk.getX();
-        final int fChunkCoordZ = chunk.getZ();
-        final long fChunkSeed = chunkSeed;
-        final int fNumVeins = numVeinsLocal;
-
-        // Defer actual generation to avoid blocking the pre-load hook.
-        World world = chunk.getWorld();
-        world.execute(() -> {
-            // Recreate RNG from the same seed and advance it past the values
-            // we consumed for the spawn check and vein-count so the deferred
-            // generation uses the identical sequence of randomness.
-            Random deferredRand = new Random(fChunkSeed);
-            // advance past spawn check and vein-count
-            deferredRand.nextDouble();
-            deferredRand.nextInt(2);
-
-            int totalPlacedLocal = 0;
-            int veinsCreatedLocal = 0;
-            long chunkStart = System.nanoTime();
-
-            // Fetch the chunk reference once in the deferred context
-            long chunkIndex = ChunkUtil.indexChunkFromBlock(fChunkX, fChunkZ);
-            WorldChunk deferredChunk = (WorldChunk) world.getNonTickingChunk(chunkIndex);
-            if (deferredChunk == null) {
-                return; // chunk not available for deferred modification
+        
+        ChunkOccupancy occupancy = ChunkOccupancy.scan(adapter);
+        GenerationProfile profile = tables.profiles.forEnvironment(environment);
+        long worldSeed = world.getWorldConfig().getSeed();
+        GenerationMode mode = context.mode;
+        
+        if (pregenerating) {
+            // Plan while the load finishes, many pregen chunks at once on the pool; the pregen
+            // job applies the plan right after the load rather than through the queue, since
+            // nothing would keep the chunk loaded until its turn there.
+            pregen.planned(chunkX, chunkZ, CompletableFuture.supplyAsync(
+                () -> planner.plan(mode, profile, worldSeed, chunkX, chunkZ, occupancy), plannerPool));
+            return;
+        }
+        
+        if (applyInPreLoad) {
+            // Nobody has seen this chunk yet: one batched write, no second lookup on the
+            // world thread, no resync to clients, and it cannot unload before we get to it.
+            VeinPlan plan = planner.plan(mode, profile, worldSeed, chunkX, chunkZ, occupancy);
+            context.apply(generator, adapter, plan, tables.ores);
+            return;
+        }
+        
+        // Otherwise plan off-thread and let the world thread apply it within its budget.
+        // Announced first, so pregen does not give the chunk ore of its own meanwhile.
+        scheduler.expect(world, chunkX, chunkZ);
+        plannerPool.execute(() -> {
+            VeinPlan plan;
+            try {
+                plan = planner.plan(mode, profile, worldSeed, chunkX, chunkZ, occupancy);
+            } catch (RuntimeException e) {
+                scheduler.cancelExpected(world, chunkX, chunkZ);
+                throw e;
             }
+            scheduler.submitExpected(world, retrogen ? plan.asRetrogen() : plan);
+        });
+    }
+    
+    /**
+     * Apply a vein plan to its chunk. Runs on the world thread.
+     * @return false if the chunk is no longer loaded and the plan should be parked
+     */
+    private boolean applyPlan(World world, VeinPlan plan) {
+        // Fetch the chunk reference once in the deferred context
+        long chunkIndex = ChunkUtil.indexChunkFromBlock(plan.chunkX << 5, plan.chunkZ << 5);
+        WorldChunk chunk = (WorldChunk) world.getNonTickingChunk(chunkIndex);
+        if (chunk == null) {
+            return false; // chunk not available for deferred modification
+        }
 
-            for (int i = 0; i < fNumVeins; i++) {
-                int x = fChunkX + deferredRand.nextInt(32);
-                int z = fChunkZ + deferredRand.nextInt(32);
-
-                int y = MIN_Y + (int) (Math.pow(deferredRand.nextDouble(), 1.5) * (MAX_Y - MIN_Y));
-
-                int size = MIN_VEIN_SIZE + deferredRand.nextInt(MAX_VEIN_SIZE - MIN_VEIN_SIZE + 1);
+        // A retrogen plan may have been queued twice if the chunk was reloaded
+        // meanwhile. Fresh chunks never skip, since a world recreated under the
+        // same name would otherwise find stale bits.
+        WorldGenContext context = context(world);
+        if (plan.retrogen && context.processed.isProcessed(plan.chunkX, plan.chunkZ)) {
+            return true;
+        }
 
-                int placed = generateVeinInChunk(deferredChunk, x, y, z, size, deferredRand);
-                if (placed > 0) {
-                    totalPlacedLocal += placed;
-                    veinsCreatedLocal++;
-                }
+        // Plans only exist once the tables were built
+        context.apply(generator, chunkAdapters.get().wrap(chunk), plan, tables.ores);
+        return true;
+    }
+    
+    /**
+     * Apply one chunk batch of a command job. Runs on the world thread.
+     * @return blocks placed, or -1 if the chunk is not loaded
+     */
+    private int applyJobBatch(World world, VeinPlan batch, ChangeJournal journal) {
+        long chunkIndex = ChunkUtil.indexChunkFromBlock(batch.chunkX << 5, batch.chunkZ << 5);
+        WorldChunk chunk = (WorldChunk) world.getNonTickingChunk(chunkIndex);
+        if (chunk == null) {
+            return -1;
+        }
+        return generator.applyBatch(chunkAdapters.get().wrap(chunk), batch, tables.ores, journal);
+    }
+    
+    /**
+     * Start a generate/fill job: plan its veins on the planner pool, then let
+     * the scheduler apply them a few chunks per tick, journaling every
+     * replaced block so the job can be undone.
+     */
+    private OreJob startJob(CommandContext context, World world, String kind, long[] centers, int[] sizes) {
+        OreJob job = new OreJob(scheduler.nextJobId(), kind, world.getName(), "placed",
+            line -> context.sendMessage(Message.raw(line)));
+        ChangeJournal journal = new ChangeJournal(job.id, world.getName());
+        journals.put(job.id, journal);
+        long seed = ThreadLocalRandom.current().nextLong();
+        scheduler.submitJob(world, job);
+        plannerPool.execute(() -> {
+            try {
+                job.prepared(planner.planJob(seed, centers, sizes), (w, batch) -> applyJobBatch(w, batch, journal));
+            } catch (Exception e) {
+                LOGGER.atWarning().withCause(e).log("Planning job #%d failed", job.id);
+                job.cancel();
             }
-
-            long chunkEnd = System.nanoTime();
-            long chunkMs = (chunkEnd - chunkStart) / 1_000_000L;
-
-            if (veinsCreatedLocal > 0) {
-                LOGGER.atInfo().log("Generated %d coal ore veins (%d blocks) in chunk [%d, %d] in %d ms",
-                    veinsCreatedLocal, totalPlacedLocal, fChunkCoordX, fChunkCoordZ, chunkMs);
+        });
+        return job;
+    }
+    
+    /**
+     * Start a scan/purge job over the square of chunks within {@code radius}
+     * chunks of the given block position, one chunk per step on the world thread.
+     */
+    private OreJob startScanJob(CommandContext context, World world, boolean purge, int blockX, int blockZ, int radius) {
+        String kind = purge ? "purge" : "scan";
+        OreJob job = new OreJob(scheduler.nextJobId(), kind, world.getName(), purge ? "restored" : "found",
+            line -> context.sendMessage(Message.raw(line)));
+        OreVariantTable table = tables.ores;
+        ScanResult result = new ScanResult(table);
+        int minChunkX = (blockX >> 5) - radius;
+        int minChunkZ = (blockZ >> 5) - radius;
+        int side = radius * 2 + 1;
+        job.prepared(side * side, (w, i) -> {
+            long chunkIndex = ChunkUtil.indexChunkFromBlock((minChunkX + i / side) << 5, (minChunkZ + i % side) << 5);
+            WorldChunk chunk = (WorldChunk) w.getNonTickingChunk(chunkIndex);
+            if (chunk == null) {
+                return -1;
+            }
+            int count = scanner.scanChunk(chunkAdapters.get().wrap(chunk), table, result, purge);
+            if (purge) {
+                context(w).veins.clearChunk(chunk.getX(), chunk.getZ());
+            }
+            return count;
+        }, () -> result.formatLines().forEach(job::report));
+        scheduler.submitJob(world, job);
+        return job;
+    }
+    
+    /**
+     * Start an undo job that replays a change journal one chunk per step on
+     * the world thread; the journal is dropped once the undo completes, and
+     * can be undone again if the undo is cancelled.
+     */
+    private OreJob startUndoJob(CommandContext context, World world, ChangeJournal journal) {
+        OreJob job = new OreJob(scheduler.nextJobId(), "undo", world.getName(), "restored",
+            line -> context.sendMessage(Message.raw(line)));
+        journal.undoJobId = job.id;
+        OreVariantTable table = tables.ores;
+        job.prepared(journal.chunkCount(), (w, i) -> {
+            long chunkIndex = ChunkUtil.indexChunkFromBlock(journal.chunkX(i) << 5, journal.chunkZ(i) << 5);
+            WorldChunk chunk = (WorldChunk) w.getNonTickingChunk(chunkIndex);
+            if (chunk == null) {
+                return -1;
+            }
+            return journal.restore(i, chunkAdapters.get().wrap(chunk), table);
+        }, () -> journals.remove(journal.jobId));
+        scheduler.submitJob(world, job);
+        return job;
+    }
+    
+    /**
+     * Start a pregen job: one step per chunk of the run's spiral. Chunks that
+     * already have their ore are passed over, loaded ones are done on the
+     * world thread right away, and the rest are loaded asynchronously within
+     * the run's rate cap, planned on the planner pool as they load and written
+     * on the world thread once both are done.
+     */
+    private OreJob startPregenJob(CommandContext context, World world, WorldGenContext generation, PregenRun run) {
+        OreJob job = new OreJob(scheduler.nextJobId(), "pregen", world.getName(), "placed",
+            line -> context.sendMessage(Message.raw(line)));
+        run.job = job;
+        generation.pregen = run;
+        run.save();
+        job.prepared(run.steps(), (w, i) -> pregenStep(w, generation, run, i), () -> {
+            if (!run.finished()) {
+                job.report("Some chunks could not be finished; /coalore pregen retries them from chunk " + run.checkpoint() + ".");
             }
         });
+        scheduler.submitJob(world, job);
+        return job;
     }
     
     /**
-     * Initialize and cache block IDs for better performance.
-     * @return true if initialization succeeded
+     * One chunk of a pregen run. Runs on the world thread.
+     * @return blocks placed here (loads report theirs when they are written),
+     *         or {@link OreJob#NOT_READY} while the rate cap is reached
      */
-    private boolean initializeBlockIds() {
-        if (coalOreId != Integer.MIN_VALUE) {
-            return true; // Already initialized
+    private int pregenStep(World world, WorldGenContext generation, PregenRun run, int step) {
+        int chunkX = run.chunkX(step);
+        int chunkZ = run.chunkZ(step);
+        if (generation.processed.isProcessed(chunkX, chunkZ)) {
+            run.complete(step);
+            return 0;
         }
-        
-        coalOreType = BlockType.getAssetMap().getAsset(COAL_ORE_BLOCK);
-        if (coalOreType == null) {
-            LOGGER.atWarning().log("Coal ore block type '%s' not found! Natural generation disabled.", COAL_ORE_BLOCK);
-            return false;
+        long chunkIndex = ChunkUtil.indexChunkFromBlock(chunkX << 5, chunkZ << 5);
+        WorldChunk loaded = (WorldChunk) world.getNonTickingChunk(chunkIndex);
+        if (loaded != null) {
+            // Already loaded, so the pre-load hook will not see it again
+            int placed = oreLoadedChunk(world, generation, loaded);
+            if (!generation.processed.isProcessed(chunkX, chunkZ)) {
+                return OreJob.NOT_READY; // its plan is still being made; taken once it is queued
+            }
+            run.complete(step);
+            return placed;
         }
-        
-        coalOreId = BlockType.getAssetMap().getIndex(COAL_ORE_BLOCK);
-        stoneId = BlockType.getAssetMap().getIndex(STONE_BLOCK);
-        
-        // Cache all replaceable block IDs
-        String[] replaceableBlockNames = {
-            "Rock_Stone", "Rock_Stone_Cobble", "Rock_Stone_Mossy",
-            "Rock_Sandstone", "Rock_Sandstone_Cobble",
-            "Rock_Basalt", "Rock_Basalt_Cobble",
-            "Rock_Marble", "Rock_Marble_Cobble",
-            "Rock_Granite", "Rock_Granite_Cobble",
-            "Dirt", "Dirt_Grass", "Dirt_Dry",
-            "Gravel", "Clay"
-        };
-        
-        replaceableBlockIds = new HashSet<>(replaceableBlockNames.length * 2);
-        for (int i = 0; i < replaceableBlockNames.length; i++) {
-            int id = BlockType.getAssetMap().getIndex(replaceableBlockNames[i]);
-            replaceableBlockIds.add(id);
+        if (!run.tryAcquire()) {
+            return OreJob.NOT_READY;
         }
-        
-        LOGGER.atInfo().log("Initialized coal ore generation - ore ID: %d, stone ID: %d", coalOreId, stoneId);
-        return true;
+        OreJob job = run.job;
+        run.requested(chunkX, chunkZ);
+        job.beginAsync();
+        world.getNonTickingChunkAsync(chunkIndex).whenComplete((chunk, error) -> {
+            // The pre-load hook has handed its plan over by now, if it made one
+            CompletableFuture<VeinPlan> planned = error == null ? run.takePlan(chunkX, chunkZ) : null;
+            (planned != null ? planned : CompletableFuture.<VeinPlan>completedFuture(null)).whenComplete((plan, planError) ->
+                world.execute(() -> finishPregenLoad(world, generation, run, step, plan, error != null ? error : planError)));
+        });
+        return 0;
     }
     
     /**
-     * Generate a coal ore vein within a chunk during world generation.
-     * This version works directly with the chunk being generated.
+     * Write the ore of a chunk a pregen step loaded, from the plan the
+     * pre-load hook made for it, and complete the step. Runs on the world thread.
+     * @param plan the hook's plan, or null if it made none
+     * @param error why loading or planning failed, or null
      */
-    private int generateVeinInChunk(WorldChunk chunk, int centerX, int centerY, int centerZ, int size, Random rand) {
-        int placed = 0;
-        long start = System.nanoTime();
-        int candidateChecks = 0;
-        
-        // Generate a blob-like vein using multiple overlapping spheres
-        for (int i = 0; i < size; i++) {
-            float progress = (float) i / size;
-            // Replace expensive trig calls with simple randomized offsets.
-            // This preserves a roughly similar spread while avoiding Math.sin/Math.cos.
-            int offsetX = (int) ((rand.nextDouble() * 2.0 - 1.0) * progress * 2);
-            int offsetY = (int) ((rand.nextDouble() * 2.0 - 1.0) * progress * 2);
-            int offsetZ = (int) ((rand.nextDouble() * 2.0 - 1.0) * progress * 2);
-            
-            int x = centerX + offsetX;
-            int y = centerY + offsetY;
-            int z = centerZ + offsetZ;
-            
-            // Place a small cluster at this position
-            int clusterRadius = 1 + rand.nextInt(2);
-            double r = clusterRadius + rand.nextFloat() * 0.5;
-            double r2 = r * r;
-
-            for (int dx = -clusterRadius; dx <= clusterRadius; dx++) {
-                for (int dy = -clusterRadius; dy <= clusterRadius; dy++) {
-                    for (int dz = -clusterRadius; dz <= clusterRadius; dz++) {
-                        int ddx = dx*dx;
-                        int ddy = dy*dy;
-                        int ddz = dz*dz;
-                        int dist2 = ddx + ddy + ddz;
-                        if ((double) dist2 <= r2) {
-                            int bx = x + dx;
-                            int by = y + dy;
-                            int bz = z + dz;
-
-                            // Bounds check
-                            if (by < 1 || by > 310) continue;
-
-                            // Check if this block is in the current chunk
-                            int blockChunkX = bx >> 5;
-                            int blockChunkZ = bz >> 5;
-                            if (blockChunkX != chunk.getX() || blockChunkZ != chunk.getZ()) {
-                                continue; // Skip blocks outside this chunk
-                            }
-
-                            // Count candidate check
-                            candidateChecks++;
-
-                            // Try to place coal ore
-                            if (placeCoalOreInChunk(chunk, bx, by, bz)) {
-                                placed++;
-                            }
-                        }
-                    }
+    private void finishPregenLoad(World world, WorldGenContext generation, PregenRun run, int step, VeinPlan plan, Throwable error) {
+        int chunkX = run.chunkX(step);
+        int chunkZ = run.chunkZ(step);
+        OreJob job = run.job;
+        try {
+            WorldChunk chunk = error != null ? null
+                : (WorldChunk) world.getNonTickingChunk(ChunkUtil.indexChunkFromBlock(chunkX << 5, chunkZ << 5));
+            if (chunk == null) {
+                // Left incomplete, so the checkpoint stays before it and a resumed run retries it
+                if (error != null) {
+                    LOGGER.atWarning().withCause(error).log("Pregen could not load chunk %d, %d", chunkX, chunkZ);
                 }
+                job.failed();
+                return;
+            }
+            if (plan == null) {
+                // The hook passed it over (it had ore or a plan already) or did not see the load
+                job.addBlocks(oreLoadedChunk(world, generation, chunk));
+            } else if (!generation.processed.isProcessed(chunkX, chunkZ)) {
+                job.addBlocks(generation.apply(generator, chunkAdapters.get().wrap(chunk), plan, tables.ores));
             }
+            if (!generation.processed.isProcessed(chunkX, chunkZ)) {
+                // Its plan was still being made elsewhere; retried like a failed load
+                job.failed();
+                return;
+            }
+            run.complete(step);
+        } finally {
+            run.released(chunkX, chunkZ);
+            job.endAsync();
+        }
+    }
+    
+    /**
+     * Give a loaded pregen chunk its ore unless it already has it. A plan
+     * queued or parked with the scheduler is taken out and written here, since
+     * nothing keeps the chunk loaded until the queue gets to it; otherwise the
+     * chunk is planned now. Runs on the world thread.
+     * @return blocks placed; the chunk is left unprocessed only while its plan
+     *         is still being made on the planner pool
+     */
+    private int oreLoadedChunk(World world, WorldGenContext generation, WorldChunk chunk) {
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
+        if (generation.processed.isProcessed(chunkX, chunkZ)) {
+            return 0;
+        }
+        VeinPlan plan = scheduler.take(world, chunkX, chunkZ);
+        if (plan != null) {
+            return generation.apply(generator, chunkAdapters.get().wrap(chunk), plan, tables.ores);
+        }
+        if (scheduler.hasPlan(world, chunkX, chunkZ)) {
+            return 0;
         }
-        long end = System.nanoTime();
-        long ms = (end - start) / 1_000_000L;
-        LOGGER.atInfo().log("generateVeinInChunk center=(%d,%d,%d) size=%d candidates=%d placed=%d timeMs=%d", centerX, centerY, centerZ, size, candidateChecks, placed, ms);
-        return placed;
+        return generateLoadedChunk(world, generation, chunk);
     }
     
     /**
-     * Place a single coal ore block in a chunk, only replacing stone-like blocks.
+     * Plan and write the ore of a loaded chunk that never got any, as
+     * retrogen would have. Runs on the world thread.
+     * @return blocks placed
      */
-    private boolean placeCoalOreInChunk(WorldChunk chunk, int x, int y, int z) {
+    private int generateLoadedChunk(World world, WorldGenContext generation, WorldChunk chunk) {
+        WorldChunkAdapter adapter = chunkAdapters.get().wrap(chunk);
+        int environment = GenerationProfiles.Table.environmentOf(adapter);
+        // Same rule as the pre-load hook: native biomes already have the engine's coal
+        if (nativeOnly && tables.profiles.isNative(environment)) {
+            generation.processed.markProcessed(chunk.getX(), chunk.getZ());
+            return 0;
+        }
+        GenerationProfile profile = tables.profiles.forEnvironment(environment);
+        VeinPlan plan = planner.plan(generation.mode, profile, world.getWorldConfig().getSeed(),
+            chunk.getX(), chunk.getZ(), ChunkOccupancy.scan(adapter));
+        return generation.apply(generator, adapter, plan, tables.ores);
+    }
+    
+    /**
+     * Read gauges owned by other components for a metrics snapshot.
+     */
+    private CoalOreMetrics.Gauges readGauges() {
+        CoalOreMetrics.Gauges gauges = new CoalOreMetrics.Gauges();
+        gauges.queueDepth = scheduler.queueDepth();
+        gauges.parkedChunks = scheduler.parkedCount();
+        // Store counters are plain fields written by world threads; a slightly stale read is fine here
+        for (WorldGenContext context : worlds.values()) {
+            PendingOreStore store = context.pending;
+            gauges.pendingChunks += store.entries();
+            gauges.pendingBlocks += store.pendingBlocks();
+            gauges.pendingEvictedBlocks += store.evictedBlocks();
+            gauges.pendingDroppedBlocks += store.droppedBlocks();
+        }
+        return gauges;
+    }
+    
+    /**
+     * Write the current metrics snapshot as JSON, replacing the previous one.
+     */
+    private void exportMetrics(Path file) {
         try {
-            int currentBlock = chunk.getBlock(x, y, z);
-            
-            // Check if current block is replaceable
-            if (isReplaceableBlockId(currentBlock)) {
-                // setBlock: x, y, z, blockId, blockType, rotation, filler, settings
-                // settings: 4 = no particles, helps with performance during generation
-                chunk.setBlock(x, y, z, coalOreId, coalOreType, 0, 0, 4);
-                return true;
-            }
-            
-            return false;
-        } catch (Exception e) {
-            return false;
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, metrics.toJson(readGauges()), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not write metrics snapshot to %s", file);
         }
     }
     
     /**
-     * Fast check if a block ID is replaceable (uses cached IDs).
+     * Generation context for a world, created on first use.
      */
-    private boolean isReplaceableBlockId(int blockId) {
-        if (blockId == stoneId) return true;
-        if (replaceableBlockIds != null && replaceableBlockIds.contains(blockId)) {
-            return true;
+    private WorldGenContext context(World world) {
+        return worlds.computeIfAbsent(world.getName(),
+            name -> new WorldGenContext(name, config.generationMode(name), this.getDataDirectory(), indexIo));
+    }
+    
+    /**
+     * Push processed-chunk bits and dirty vein index regions to disk so a
+     * crash loses at most a few seconds of them.
+     * @return completes once the vein index regions are written
+     */
+    private CompletableFuture<Void> flushIndexes() {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (WorldGenContext context : worlds.values()) {
+            writes.add(context.flush());
+        }
+        return CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new));
+    }
+    
+    /**
+     * The ore and profile tables, built on first use (assets are not
+     * guaranteed to be loaded during setup). Built once under the plugin's
+     * monitor and published through one volatile write, so every thread sees
+     * either nothing or both complete tables.
+     * @return the tables, or null if the block assets are not available yet
+     */
+    private BlockTables tables() {
+        BlockTables current = tables;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (tables == null) {
+                OreVariantTable ores = OreVariantTable.fromAssets();
+                if (ores == null) {
+                    return null;
+                }
+                tables = new BlockTables(ores, profiles.compile(GenerationProfiles.nativeEnvironments()));
+            }
+            return tables;
         }
-
-        return false;
     }
     
     // ========== COMMANDS (for manual ore spawning) ==========
@@ -356,6 +767,35 @@ public class CoalOrePlugin extends JavaPlugin {
             this.addSubCommand(new SpawnCommand());
             this.addSubCommand(new GenerateCommand());
             this.addSubCommand(new FillCommand());
+            this.addSubCommand(new ScanCommand());
+            this.addSubCommand(new PurgeCommand());
+            this.addSubCommand(new LocateCommand());
+            this.addSubCommand(new UndoCommand());
+            this.addSubCommand(new PregenCommand());
+            this.addSubCommand(new JobsCommand());
+            this.addSubCommand(new CancelCommand());
+            this.addSubCommand(new StatsCommand());
+        }
+    }
+    
+    /**
+     * Shows generation counters and latency histograms
+     */
+    private class StatsCommand extends AbstractPlayerCommand {
+        
+        public StatsCommand() {
+            super("stats", "Show coal ore generation statistics");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            for (String line : metrics.formatLines(readGauges())) {
+                context.sendMessage(Message.raw(line));
+            }
+            for (WorldGenContext worldContext : worlds.values()) {
+                context.sendMessage(Message.raw(worldContext.describe()));
+            }
         }
     }
     
@@ -433,27 +873,25 @@ public class CoalOrePlugin extends JavaPlugin {
             int radius = Math.max(1, Math.min(128, radiusArg.get(context)));
             int count = Math.max(1, Math.min(100, countArg.get(context)));
             
-            context.sendMessage(Message.raw("Generating " + count + " coal ore veins in radius " + radius + "..."));
+            if (tables() == null) {
+                context.sendMessage(Message.raw("Coal ore blocks are not available!"));
+                return;
+            }
             
-            world.execute(() -> {
-                int totalPlaced = 0;
-                int veinsCreated = 0;
-                
-                for (int i = 0; i < count; i++) {
-                    int x = centerX + random.nextInt(radius * 2) - radius;
-                    int z = centerZ + random.nextInt(radius * 2) - radius;
-                    int y = 10 + random.nextInt(50);
-                    int size = 4 + random.nextInt(9);
-                    
-                    int placed = spawnCoalOreVein(world, x, y, z, size);
-                    if (placed > 0) {
-                        totalPlaced += placed;
-                        veinsCreated++;
-                    }
-                }
-                
-                context.sendMessage(Message.raw("Generated " + veinsCreated + " veins with " + totalPlaced + " total coal ore blocks!"));
-            });
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long[] centers = new long[count];
+            int[] sizes = new int[count];
+            for (int i = 0; i < count; i++) {
+                int x = centerX + random.nextInt(radius * 2) - radius;
+                int z = centerZ + random.nextInt(radius * 2) - radius;
+                int y = 10 + random.nextInt(50);
+                centers[i] = PackedBlockPos.pack(x, y, z);
+                sizes[i] = 4 + random.nextInt(9);
+            }
+            
+            OreJob job = startJob(context, world, "generate", centers, sizes);
+            context.sendMessage(Message.raw("Job #" + job.id + ": generating " + count + " coal ore veins in radius " + radius
+                + " (/coalore cancel " + job.id + " to stop)"));
         }
     }
     
@@ -487,150 +925,347 @@ public class CoalOrePlugin extends JavaPlugin {
             
             int radius = Math.max(1, Math.min(64, radiusArg.get(context)));
             
-            context.sendMessage(Message.raw("Filling area with coal ore (radius " + radius + ")..."));
+            if (tables() == null) {
+                context.sendMessage(Message.raw("Coal ore blocks are not available!"));
+                return;
+            }
             
-            world.execute(() -> {
-                int totalPlaced = 0;
-                int veinsCreated = 0;
-                int spacing = 8;
-                
-                for (int x = centerX - radius; x <= centerX + radius; x += spacing) {
-                    for (int z = centerZ - radius; z <= centerZ + radius; z += spacing) {
-                        for (int yBase = 15; yBase <= 55; yBase += 15) {
-                            int vx = x + random.nextInt(spacing) - spacing/2;
-                            int vz = z + random.nextInt(spacing) - spacing/2;
-                            int vy = yBase + random.nextInt(10) - 5;
-                            int size = 5 + random.nextInt(6);
-                            
-                            int placed = spawnCoalOreVein(world, vx, vy, vz, size);
-                            if (placed > 0) {
-                                totalPlaced += placed;
-                                veinsCreated++;
-                            }
-                        }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int spacing = 8;
+            int perAxis = (radius * 2) / spacing + 1;
+            long[] centers = new long[perAxis * perAxis * 3];
+            int[] sizes = new int[centers.length];
+            int veins = 0;
+            for (int x = centerX - radius; x <= centerX + radius; x += spacing) {
+                for (int z = centerZ - radius; z <= centerZ + radius; z += spacing) {
+                    for (int yBase = 15; yBase <= 55; yBase += 15) {
+                        int vx = x + random.nextInt(spacing) - spacing/2;
+                        int vz = z + random.nextInt(spacing) - spacing/2;
+                        int vy = yBase + random.nextInt(10) - 5;
+                        centers[veins] = PackedBlockPos.pack(vx, vy, vz);
+                        sizes[veins] = 5 + random.nextInt(6);
+                        veins++;
                     }
                 }
-                
-                context.sendMessage(Message.raw("Created " + veinsCreated + " veins with " + totalPlaced + " total coal ore blocks!"));
-            });
+            }
+            
+            OreJob job = startJob(context, world, "fill", centers, sizes);
+            context.sendMessage(Message.raw("Job #" + job.id + ": filling area with " + veins + " coal ore veins (radius " + radius
+                + ", /coalore cancel " + job.id + " to stop)"));
         }
     }
     
     /**
-     * Spawns a coal ore vein at the specified position (for commands).
-     * Uses a blob-like pattern similar to Minecraft ore generation.
+     * Counts the coal ore in the chunks around the player
      */
-    private int spawnCoalOreVein(World world, int centerX, int centerY, int centerZ, int size) {
-        if (!initializeBlockIds()) {
-            return 0;
+    private class ScanCommand extends AbstractPlayerCommand {
+        
+        @Nonnull
+        private final DefaultArg<Integer> radiusArg = this.withDefaultArg(
+            "radius", "Radius in chunks (0-64)", ArgTypes.INTEGER, 4, "Scan radius"
+        );
+        
+        public ScanCommand() {
+            super("scan", "Count coal ore in nearby chunks");
         }
         
-        int placed = 0;
-        long start = System.nanoTime();
-        int candidateChecks = 0;
-        int chunkLookups = 0;
-
-        // Collect candidate placements grouped by chunk index, then flush per-chunk
-        Map<Long, List<int[]>> placementsPerChunk = new HashMap<>();
-
-        for (int i = 0; i < size; i++) {
-            float progress = (float) i / size;
-            // Avoid trig functions during command-driven generation as well.
-            int offsetX = (int) ((random.nextDouble() * 2.0 - 1.0) * progress * 2);
-            int offsetY = (int) ((random.nextDouble() * 2.0 - 1.0) * progress * 2);
-            int offsetZ = (int) ((random.nextDouble() * 2.0 - 1.0) * progress * 2);
-
-            int x = centerX + offsetX;
-            int y = centerY + offsetY;
-            int z = centerZ + offsetZ;
-
-            int clusterRadius = 1 + random.nextInt(2);
-
-            double r = clusterRadius + random.nextFloat() * 0.5;
-            double r2 = r * r;
-
-            for (int dx = -clusterRadius; dx <= clusterRadius; dx++) {
-                for (int dy = -clusterRadius; dy <= clusterRadius; dy++) {
-                    for (int dz = -clusterRadius; dz <= clusterRadius; dz++) {
-                        int ddx = dx*dx;
-                        int ddy = dy*dy;
-                        int ddz = dz*dz;
-                        int dist2 = ddx + ddy + ddz;
-                        if ((double) dist2 <= r2) {
-                            int bx = x + dx;
-                            int by = y + dy;
-                            int bz = z + dz;
-
-                            if (by < 1 || by > 310) continue;
-
-                            candidateChecks++;
-                            long chunkIndex = ChunkUtil.indexChunkFromBlock(bx, bz);
-                            List<int[]> list = placementsPerChunk.get(chunkIndex);
-                            if (list == null) {
-                                list = new ArrayList<>();
-                                placementsPerChunk.put(chunkIndex, list);
-                            }
-                            list.add(new int[]{bx, by, bz});
-                        }
-                    }
-                }
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            startScanCommand(context, store, ref, world, false, radiusArg.get(context));
+        }
+    }
+    
+    /**
+     * Replaces the coal ore in the chunks around the player with its host rock.
+     * Ore cannot be told apart by who placed it, so this also removes coal the
+     * engine or other asset packs generated; it only runs once confirmed.
+     */
+    private class PurgeCommand extends AbstractPlayerCommand {
+        
+        @Nonnull
+        private final DefaultArg<Integer> radiusArg = this.withDefaultArg(
+            "radius", "Radius in chunks (0-64)", ArgTypes.INTEGER, 4, "Purge radius"
+        );
+        
+        @Nonnull
+        private final DefaultArg<Integer> confirmArg = this.withDefaultArg(
+            "confirm", "1 to remove all coal ore, natively generated included", ArgTypes.INTEGER, 0, "Confirm purge"
+        );
+        
+        public PurgeCommand() {
+            super("purge", "Remove coal ore from nearby chunks");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            int radius = radiusArg.get(context);
+            if (confirmArg.get(context) != 1) {
+                context.sendMessage(Message.raw("Purge removes every coal ore block in range, including coal the world generator"
+                    + " placed natively, not just this plugin's veins. Run /coalore purge " + radius + " 1 to go ahead."));
+                return;
             }
+            startScanCommand(context, store, ref, world, true, radius);
         }
-
-        // Flush placements per chunk: fetch the chunk once and apply placements
-        for (Map.Entry<Long, List<int[]>> e : placementsPerChunk.entrySet()) {
-            long chunkIndex = e.getKey();
-            List<int[]> list = e.getValue();
-            WorldChunk chunk = (WorldChunk) world.getNonTickingChunk(chunkIndex);
-            chunkLookups++;
-            if (chunk == null) continue;
-
-            for (int[] coord : list) {
-                int bx = coord[0];
-                int by = coord[1];
-                int bz = coord[2];
-
-                try {
-                    int currentBlock = chunk.getBlock(bx, by, bz);
-                    if (isReplaceableBlockId(currentBlock)) {
-                        chunk.setBlock(bx, by, bz, coalOreId, coalOreType, 0, 0, 4);
-                        placed++;
-                    }
-                } catch (Exception ex) {
-                    // ignore problematic coords during flush
-                }
+    }
+    
+    /**
+     * Lists the generated veins nearest to the player from the vein index
+     */
+    private class LocateCommand extends AbstractPlayerCommand {
+        
+        private static final int MAX_LISTED = 5;
+        
+        @Nonnull
+        private final DefaultArg<Integer> radiusArg = this.withDefaultArg(
+            "radius", "Search radius in blocks (1-512)", ArgTypes.INTEGER, 64, "Locate radius"
+        );
+        
+        public LocateCommand() {
+            super("locate", "Find generated coal veins near you");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            TransformComponent transform = store.getComponent(ref, TransformComponent.getComponentType());
+            if (transform == null) {
+                context.sendMessage(Message.raw("Could not get player position!"));
+                return;
             }
+            
+            Vector3d pos = transform.getPosition();
+            int x = (int) Math.floor(pos.x);
+            int y = (int) Math.floor(pos.y);
+            int z = (int) Math.floor(pos.z);
+            int radius = Math.max(1, Math.min(512, radiusArg.get(context)));
+            
+            // Index regions not in memory are read on the index thread, not here
+            findVeinsAsync(world, x, y, z, radius, Integer.MAX_VALUE).whenComplete((veins, error) -> {
+                if (error != null) {
+                    LOGGER.atWarning().withCause(error).log("Vein lookup failed");
+                    context.sendMessage(Message.raw("Could not read the vein index, see the server log."));
+                    return;
+                }
+                if (veins.isEmpty()) {
+                    context.sendMessage(Message.raw("No generated coal veins within " + radius + " blocks."));
+                    return;
+                }
+                context.sendMessage(Message.raw(veins.size() + " coal veins within " + radius + " blocks, nearest first:"));
+                for (OreVein vein : veins.subList(0, Math.min(MAX_LISTED, veins.size()))) {
+                    int dy = vein.getY() - y;
+                    context.sendMessage(Message.raw("  " + vein.getVariant() + ", " + vein.getBlockCount() + " blocks at ("
+                        + vein.getX() + ", " + vein.getY() + ", " + vein.getZ() + "), " + Math.round(vein.getDistance()) + " blocks away"
+                        + (dy < 0 ? " (" + -dy + " down)" : dy > 0 ? " (" + dy + " up)" : "")));
+                }
+            });
         }
-
-        long end = System.nanoTime();
-        long elapsedMs = (end - start) / 1_000_000L;
-        LOGGER.atInfo().log("spawnCoalOreVein: size=%d candidates=%d chunks=%d placed=%d timeMs=%d", size, candidateChecks, chunkLookups, placed, elapsedMs);
-
-        return placed;
     }
     
     /**
-     * Places a single coal ore block (for commands), only replacing stone-like blocks.
+     * Shared part of the scan and purge commands.
      */
-    private boolean placeCoalOre(World world, int x, int y, int z) {
-        try {
-            long chunkIndex = ChunkUtil.indexChunkFromBlock(x, z);
-            WorldChunk chunk = (WorldChunk) world.getNonTickingChunk(chunkIndex);
+    private void startScanCommand(CommandContext context, Store<EntityStore> store, Ref<EntityStore> ref, World world,
+                                  boolean purge, int radiusChunks) {
+        TransformComponent transform = store.getComponent(ref, TransformComponent.getComponentType());
+        if (transform == null) {
+            context.sendMessage(Message.raw("Could not get player position!"));
+            return;
+        }
+        
+        if (tables() == null) {
+            context.sendMessage(Message.raw("Coal ore blocks are not available!"));
+            return;
+        }
+        
+        Vector3d pos = transform.getPosition();
+        int radius = Math.max(0, Math.min(64, radiusChunks));
+        OreJob job = startScanJob(context, world, purge, (int) Math.floor(pos.x), (int) Math.floor(pos.z), radius);
+        int side = radius * 2 + 1;
+        context.sendMessage(Message.raw("Job #" + job.id + ": " + (purge ? "purging" : "scanning") + " " + side * side
+            + " chunks (radius " + radius + ", /coalore cancel " + job.id + " to stop)"));
+    }
+    
+    /**
+     * Reverts a generate/fill job by replaying its change journal
+     */
+    private class UndoCommand extends AbstractPlayerCommand {
+        
+        @Nonnull
+        private final DefaultArg<Integer> idArg = this.withDefaultArg(
+            "id", "Job to undo (0 = newest)", ArgTypes.INTEGER, 0, "Job id"
+        );
+        
+        public UndoCommand() {
+            super("undo", "Revert a coal ore generate/fill job");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            int id = idArg.get(context);
+            ChangeJournal journal;
+            synchronized (journals) {
+                List<ChangeJournal> kept = new ArrayList<>(journals.values());
+                journal = id > 0 ? journals.get(id) : kept.isEmpty() ? null : kept.get(kept.size() - 1);
+            }
+            if (journal == null) {
+                context.sendMessage(Message.raw("No journal for " + (id > 0 ? "job #" + id : "any job")
+                    + " (only the last " + MAX_JOURNALS + " generate/fill jobs can be undone)."));
+                return;
+            }
+            if (!journal.worldName.equals(world.getName())) {
+                context.sendMessage(Message.raw("Job #" + journal.jobId + " ran in world " + journal.worldName + "; undo it from there."));
+                return;
+            }
+            OreJob original = scheduler.job(journal.jobId);
+            if (original != null && !original.isFinished()) {
+                context.sendMessage(Message.raw("Job #" + journal.jobId + " is still running; cancel it first (/coalore cancel " + journal.jobId + ")."));
+                return;
+            }
+            int undoing = journal.undoJobId;
+            if (undoing != 0 && scheduler.job(undoing) != null) {
+                context.sendMessage(Message.raw("Job #" + journal.jobId + " is already being undone by job #" + undoing + "."));
+                return;
+            }
+            if (tables() == null) {
+                context.sendMessage(Message.raw("Coal ore blocks are not available!"));
+                return;
+            }
             
-            if (chunk == null) {
-                return false;
+            OreJob job = startUndoJob(context, world, journal);
+            context.sendMessage(Message.raw("Job #" + job.id + ": undoing job #" + journal.jobId + " (" + journal.entryCount()
+                + " blocks in " + journal.chunkCount() + " chunks, " + journal.sizeBytes() / 1024 + " KB journal, /coalore cancel "
+                + job.id + " to stop)"));
+        }
+    }
+    
+    /**
+     * Adds ore to every chunk within a radius ahead of players, or resumes
+     * the world's interrupted run
+     */
+    private class PregenCommand extends AbstractPlayerCommand {
+        
+        @Nonnull
+        private final DefaultArg<Integer> radiusArg = this.withDefaultArg(
+            "radius", "Radius in chunks (0 = resume the last run)", ArgTypes.INTEGER, 0, "Pregen radius"
+        );
+        
+        public PregenCommand() {
+            super("pregen", "Pregenerate coal ore in the chunks around you");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            WorldGenContext generation = context(world);
+            PregenRun running = generation.pregen;
+            if (running != null && !running.job.isFinished()) {
+                context.sendMessage(Message.raw("Pregen is already running as job #" + running.job.id
+                    + " (/coalore cancel " + running.job.id + " to stop it)."));
+                return;
+            }
+            if (tables() == null) {
+                context.sendMessage(Message.raw("Coal ore blocks are not available!"));
+                return;
             }
             
-            int currentBlock = chunk.getBlock(x, y, z);
+            int radius = Math.max(0, Math.min(512, radiusArg.get(context)));
+            PregenRun run;
+            if (radius == 0) {
+                run = PregenRun.resume(generation.pregenCheckpoint, config.pregenChunksPerSecond);
+                if (run == null) {
+                    context.sendMessage(Message.raw("No pregen to resume in this world; use /coalore pregen <radius>."));
+                    return;
+                }
+            } else {
+                TransformComponent transform = store.getComponent(ref, TransformComponent.getComponentType());
+                if (transform == null) {
+                    context.sendMessage(Message.raw("Could not get player position!"));
+                    return;
+                }
+                Vector3d pos = transform.getPosition();
+                run = PregenRun.start(generation.pregenCheckpoint, (int) Math.floor(pos.x) >> 5, (int) Math.floor(pos.z) >> 5,
+                    radius, config.pregenChunksPerSecond);
+            }
             
-            if (isReplaceableBlockId(currentBlock)) {
-                chunk.setBlock(x, y, z, coalOreId, coalOreType, 0, 0, 4);
-                return true;
+            OreJob job = startPregenJob(context, world, generation, run);
+            context.sendMessage(Message.raw("Job #" + job.id + ": pregenerating " + run.totalChunks + " chunks within "
+                + run.radius + " of chunk (" + run.centerX + ", " + run.centerZ + ")"
+                + (run.firstIndex > 0 ? ", resuming at chunk " + run.firstIndex : "")
+                + ", up to " + config.pregenChunksPerSecond + " chunks/s (/coalore cancel " + job.id + " to pause)"));
+        }
+    }
+    
+    /**
+     * Lists running generate/fill/scan/purge/undo/pregen jobs
+     */
+    private class JobsCommand extends AbstractPlayerCommand {
+        
+        public JobsCommand() {
+            super("jobs", "List running coal ore jobs");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            List<OreJob> jobs = scheduler.jobs();
+            if (jobs.isEmpty()) {
+                context.sendMessage(Message.raw("No coal ore jobs running."));
+                return;
+            }
+            for (OreJob job : jobs) {
+                context.sendMessage(Message.raw(job.describe()));
+            }
+        }
+    }
+    
+    /**
+     * Cancels a running job
+     */
+    private class CancelCommand extends AbstractPlayerCommand {
+        
+        @Nonnull
+        private final DefaultArg<Integer> idArg = this.withDefaultArg(
+            "id", "Job to cancel (0 = newest)", ArgTypes.INTEGER, 0, "Job id"
+        );
+        
+        public CancelCommand() {
+            super("cancel", "Cancel a running coal ore job");
+        }
+        
+        @Override
+        protected void execute(@Nonnull CommandContext context, @Nonnull Store<EntityStore> store, 
+                             @Nonnull Ref<EntityStore> ref, @Nonnull PlayerRef playerRef, @Nonnull World world) {
+            int id = idArg.get(context);
+            OreJob job = null;
+            if (id > 0) {
+                job = scheduler.job(id);
+            } else {
+                List<OreJob> jobs = scheduler.jobs();
+                if (!jobs.isEmpty()) {
+                    job = jobs.get(jobs.size() - 1);
+                }
             }
             
-            return false;
-        } catch (Exception e) {
-            return false;
+            if (job == null || !job.cancel()) {
+                context.sendMessage(Message.raw("No running coal ore job" + (id > 0 ? " #" + id : "") + "."));
+                return;
+            }
+            context.sendMessage(Message.raw("Cancelling job #" + job.id + " (" + job.kind + ")..."));
+        }
+    }
+    
+    /**
+     * Spawns a coal ore vein at the specified position (for commands).
+     * Uses a blob-like pattern similar to Minecraft ore generation.
+     */
+    private int spawnCoalOreVein(World world, int centerX, int centerY, int centerZ, int size) {
+        BlockTables tables = tables();
+        if (tables == null) {
+            return 0;
         }
+        return generator.spawnVein(WorldChunkAdapter.forWorld(world), tables.ores, centerX, centerY, centerZ, size, ThreadLocalRandom.current());
     }
 }
@@ -0,0 +1,23 @@
+package com.jordansbored.coalore;
+
+import java.util.Locale;
+
+/**
+ * How natural generation shapes coal: stamped blob veins, or seams carved
+ * from a 3D noise field. Chosen per world in the config.
+ */
+enum GenerationMode {
+    BLOB,
+    NOISE;
+
+    /**
+     * @return the mode with that name (any case), or null if there is none
+     */
+    static GenerationMode parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.jordansbored.coalore;
+
+/**
+ * Vein settings for one zone or biome. Plain final fields so the planner
+ * reads them without any lookups; instances are shared between all chunks
+ * that resolve to the same profile.
+ */
+final class GenerationProfile {
+
+    /** The built-in settings, used where no profile applies. */
+    static final GenerationProfile DEFAULT = new GenerationProfile("default", VeinPlanner.VEINS_PER_CHUNK,
+        VeinPlanner.MIN_VEIN_SIZE, VeinPlanner.MAX_VEIN_SIZE, VeinPlanner.SPAWN_CHANCE, VeinPlanner.MIN_Y, VeinPlanner.MAX_Y);
+
+    final String name;
+    final int veinsPerChunk;
+    final int minVeinSize;
+    final int maxVeinSize;
+    final double spawnChance;
+    final int minY;
+    final int maxY;
+
+    GenerationProfile(String name, int veinsPerChunk, int minVeinSize, int maxVeinSize, double spawnChance, int minY, int maxY) {
+        this.name = name;
+        this.veinsPerChunk = veinsPerChunk;
+        this.minVeinSize = minVeinSize;
+        this.maxVeinSize = maxVeinSize;
+        this.spawnChance = spawnChance;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + veinsPerChunk + " veins, size " + minVeinSize + "-" + maxVeinSize + ", chance " + spawnChance
+            + ", Y=" + minY + "-" + maxY + ")";
+    }
+}
@@ -0,0 +1,355 @@
+package com.jordansbored.coalore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.asset.type.environment.config.Environment;
+
+/**
+ * Per-zone and per-biome vein settings from {@code profiles.properties} in
+ * the plugin data directory. Keys are {@code <scope>.<setting>}, where scope
+ * is {@code default}, {@code zone.<n>} or {@code biome.<environment id>};
+ * a biome inherits from its zone, and a zone from the defaults.
+ *
+ * Biomes are told apart by the environment the terrain generator wrote into
+ * the chunk. Once the environment assets are loaded, {@link #compile(Set)}
+ * resolves every environment to its profile, so generation only does one
+ * array load per chunk.
+ *
+ * The same profiles can be compiled into the asset pack's native coal
+ * assignments at build time (see the compileNativeAssignments task); the
+ * environments that covers are listed in {@link #NATIVE_LIST_RESOURCE}.
+ */
+final class GenerationProfiles {
+
+    /**
+     * The logger lives in its own holder so that parsing profiles does not
+     * initialise it: NativeAssignmentCompiler parses them at build time,
+     * without a server.
+     */
+    private static final class Log {
+        static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    }
+
+    static final String FILE_NAME = "profiles.properties";
+
+    // Written by the compileNativeAssignments build task, one environment id per line
+    static final String NATIVE_LIST_RESOURCE = "/coalore/native-environments.txt";
+
+    // Environment ids name their zone, e.g. Env_Zone2_Desert
+    private static final Pattern ZONE = Pattern.compile("Zone(\\d+)");
+
+    private static final String TEMPLATE = String.join("\n",
+        "# Coal Ore per-zone and per-biome generation profiles",
+        "#",
+        "# <scope>.<setting>=<value>, where <scope> is one of",
+        "#   default                 every chunk without a more specific profile",
+        "#   zone.<n>                chunks whose environment id contains Zone<n>",
+        "#   biome.<environment id>  chunks with exactly that environment",
+        "# A biome inherits from its zone, a zone from the defaults.",
+        "#",
+        "# Settings: veinsPerChunk, minVeinSize, maxVeinSize (1-20),",
+        "#           spawnChance (0-1), minY, maxY",
+        "#",
+        "# Examples:",
+        "# zone.2.veinsPerChunk=3",
+        "# zone.2.maxVeinSize=5",
+        "# biome.Env_Zone3_Mountains.veinsPerChunk=8",
+        "");
+
+    private final GenerationProfile defaults;
+    private final Map<Integer, GenerationProfile> zones;
+    private final Map<String, GenerationProfile> biomes;
+
+    private GenerationProfiles(GenerationProfile defaults, Map<Integer, GenerationProfile> zones, Map<String, GenerationProfile> biomes) {
+        this.defaults = defaults;
+        this.zones = zones;
+        this.biomes = biomes;
+    }
+
+    /**
+     * Load the profiles from the data directory, creating a commented template
+     * if the file does not exist.
+     */
+    static GenerationProfiles load(Path dataDirectory) {
+        Path file = dataDirectory.resolve(FILE_NAME);
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                Log.LOGGER.atWarning().withCause(e).log("Could not read %s, using the default profile", file);
+            }
+        } else {
+            try {
+                Files.createDirectories(dataDirectory);
+                Files.writeString(file, TEMPLATE, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                Log.LOGGER.atWarning().withCause(e).log("Could not write profile template to %s", file);
+            }
+        }
+        return parse(properties, warning -> Log.LOGGER.atWarning().log("%s", warning));
+    }
+
+    /**
+     * Build the profiles from already loaded settings.
+     * @param warnings receives a message for every invalid setting
+     */
+    static GenerationProfiles parse(Properties properties, Consumer<String> warnings) {
+        GenerationProfile defaults = profile("default", properties, "default.", GenerationProfile.DEFAULT, warnings);
+
+        Map<Integer, GenerationProfile> zones = new HashMap<>();
+        Map<String, GenerationProfile> biomes = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (key.startsWith("zone.") && dot > 5) {
+                String scope = key.substring(5, dot);
+                try {
+                    int zone = Integer.parseInt(scope);
+                    zones.computeIfAbsent(zone, z -> profile("zone " + z, properties, "zone." + z + ".", defaults, warnings));
+                } catch (NumberFormatException e) {
+                    warnings.accept("Invalid zone '" + scope + "' in " + key);
+                }
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (key.startsWith("biome.") && dot > 6) {
+                String biome = key.substring(6, dot);
+                biomes.computeIfAbsent(biome, b -> {
+                    int zone = zoneOf(b);
+                    return profile(b, properties, "biome." + b + ".", zones.getOrDefault(zone, defaults), warnings);
+                });
+            }
+        }
+        return new GenerationProfiles(defaults, zones, biomes);
+    }
+
+    /**
+     * Read the settings under a prefix, falling back to {@code parent} for
+     * missing or invalid ones.
+     */
+    private static GenerationProfile profile(String name, Properties properties, String prefix, GenerationProfile parent,
+                                             Consumer<String> warnings) {
+        int veins = getInt(properties, prefix + "veinsPerChunk", parent.veinsPerChunk, 0, 64, warnings);
+        int minSize = getInt(properties, prefix + "minVeinSize", parent.minVeinSize, 1, 20, warnings);
+        int maxSize = getInt(properties, prefix + "maxVeinSize", parent.maxVeinSize, minSize, 20, warnings);
+        double chance = getDouble(properties, prefix + "spawnChance", parent.spawnChance, warnings);
+        int minY = getInt(properties, prefix + "minY", parent.minY, 0, SectionBatchWriter.SECTION_COUNT * 32 - 1, warnings);
+        int maxY = getInt(properties, prefix + "maxY", parent.maxY, minY, SectionBatchWriter.SECTION_COUNT * 32 - 1, warnings);
+        return new GenerationProfile(name, veins, minSize, maxSize, chance, minY, maxY);
+    }
+
+    private static int getInt(Properties properties, String key, int def, int min, int max, Consumer<String> warnings) {
+        String raw = properties.getProperty(key);
+        int value = def;
+        if (raw != null) {
+            try {
+                value = Integer.parseInt(raw.trim());
+            } catch (NumberFormatException e) {
+                warnings.accept("Invalid value '" + raw + "' for " + key + ", using " + def);
+            }
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static double getDouble(Properties properties, String key, double def, Consumer<String> warnings) {
+        String raw = properties.getProperty(key);
+        double value = def;
+        if (raw != null) {
+            try {
+                value = Double.parseDouble(raw.trim());
+            } catch (NumberFormatException e) {
+                warnings.accept("Invalid value '" + raw + "' for " + key + ", using " + def);
+            }
+        }
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+
+    /**
+     * Profile for an environment id: its biome profile, else its zone's, else the defaults.
+     */
+    GenerationProfile forEnvironmentName(String environment) {
+        GenerationProfile profile = biomes.get(environment);
+        if (profile == null) {
+            profile = zones.getOrDefault(zoneOf(environment), defaults);
+        }
+        return profile;
+    }
+
+    /**
+     * Environments whose coal the asset pack places natively, as compiled
+     * into the plugin jar; empty if the assignments were never compiled.
+     */
+    static Set<String> nativeEnvironments() {
+        Set<String> environments = new HashSet<>();
+        try (InputStream in = GenerationProfiles.class.getResourceAsStream(NATIVE_LIST_RESOURCE)) {
+            if (in == null) {
+                return environments;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    environments.add(line);
+                }
+            }
+        } catch (IOException e) {
+            Log.LOGGER.atWarning().withCause(e).log("Could not read %s", NATIVE_LIST_RESOURCE);
+        }
+        return environments;
+    }
+
+    /** Zone number in an environment id, or -1. */
+    static int zoneOf(String environment) {
+        Matcher matcher = ZONE.matcher(environment);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    GenerationProfile defaults() {
+        return defaults;
+    }
+
+    int profileCount() {
+        return 1 + zones.size() + biomes.size();
+    }
+
+    /** Smallest vein size of any profile; the template library must cover it. */
+    int minVeinSize() {
+        return Math.min(defaults.minVeinSize, Math.min(min(zones.values(), true), min(biomes.values(), true)));
+    }
+
+    int maxVeinSize() {
+        return Math.max(defaults.maxVeinSize, Math.max(max(zones.values(), true), max(biomes.values(), true)));
+    }
+
+    /** Lowest ore layer of any profile; the noise field must cover it. */
+    int minY() {
+        return Math.min(defaults.minY, Math.min(min(zones.values(), false), min(biomes.values(), false)));
+    }
+
+    int maxY() {
+        return Math.max(defaults.maxY, Math.max(max(zones.values(), false), max(biomes.values(), false)));
+    }
+
+    private static int min(Collection<GenerationProfile> profiles, boolean size) {
+        int min = Integer.MAX_VALUE;
+        for (GenerationProfile profile : profiles) {
+            min = Math.min(min, size ? profile.minVeinSize : profile.minY);
+        }
+        return min;
+    }
+
+    private static int max(Collection<GenerationProfile> profiles, boolean size) {
+        int max = Integer.MIN_VALUE;
+        for (GenerationProfile profile : profiles) {
+            max = Math.max(max, size ? profile.maxVeinSize : profile.maxY);
+        }
+        return max;
+    }
+
+    /**
+     * Resolve every loaded environment to its profile. Environment assets
+     * must be loaded, so call this on first use rather than during setup.
+     * @param nativeEnvironments environments the asset pack already places coal in
+     */
+    Table compile(Set<String> nativeEnvironments) {
+        Map<String, Environment> environments = Environment.getAssetMap().getAssetMap();
+        int maxId = -1;
+        int[] ids = new int[environments.size()];
+        GenerationProfile[] resolved = new GenerationProfile[environments.size()];
+        int n = 0;
+        int specific = 0;
+        for (String name : environments.keySet()) {
+            int id = Environment.getAssetMap().getIndex(name);
+            if (id < 0) {
+                continue;
+            }
+            GenerationProfile profile = forEnvironmentName(name);
+            if (profile != defaults) {
+                specific++;
+            }
+            ids[n] = id;
+            resolved[n] = profile;
+            n++;
+            maxId = Math.max(maxId, id);
+        }
+
+        GenerationProfile[] byEnvironment = new GenerationProfile[maxId + 1];
+        boolean[] nativeByEnvironment = new boolean[maxId + 1];
+        int covered = 0;
+        for (int i = 0; i < n; i++) {
+            byEnvironment[ids[i]] = resolved[i];
+        }
+        for (String name : nativeEnvironments) {
+            int id = environments.containsKey(name) ? Environment.getAssetMap().getIndex(name) : -1;
+            if (id >= 0 && id <= maxId) {
+                nativeByEnvironment[id] = true;
+                covered++;
+            }
+        }
+        for (String biome : biomes.keySet()) {
+            if (!environments.containsKey(biome)) {
+                Log.LOGGER.atWarning().log("Profile for unknown environment '%s' in %s is never used", biome, FILE_NAME);
+            }
+        }
+        Log.LOGGER.atInfo().log("Compiled generation profiles: %d environments, %d with a zone or biome profile, %d with native coal",
+            n, specific, covered);
+        return new Table(byEnvironment, nativeByEnvironment, defaults);
+    }
+
+    /**
+     * Environment id -> profile, as a plain array. Immutable and safe to
+     * share between threads.
+     */
+    static final class Table {
+
+        private final GenerationProfile[] byEnvironment;
+        private final boolean[] nativeByEnvironment;
+        private final GenerationProfile defaults;
+
+        Table(GenerationProfile[] byEnvironment, boolean[] nativeByEnvironment, GenerationProfile defaults) {
+            this.byEnvironment = byEnvironment;
+            this.nativeByEnvironment = nativeByEnvironment;
+            this.defaults = defaults;
+        }
+
+        /**
+         * Environment a chunk's profile is chosen by, sampled once at the
+         * surface of its center column.
+         */
+        static int environmentOf(OreChunk chunk) {
+            return chunk.environment(16, chunk.height(16, 16), 16);
+        }
+
+        /** True if the asset pack's own coal assignments cover this environment. */
+        boolean isNative(int environment) {
+            return environment >= 0 && environment < nativeByEnvironment.length && nativeByEnvironment[environment];
+        }
+
+        GenerationProfile forEnvironment(int environment) {
+            if (environment < 0 || environment >= byEnvironment.length) {
+                return defaults;
+            }
+            GenerationProfile profile = byEnvironment[environment];
+            return profile == null ? defaults : profile;
+        }
+    }
+}
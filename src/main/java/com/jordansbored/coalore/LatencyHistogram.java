@@ -0,0 +1,67 @@
+package com.jordansbored.coalore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed power-of-two microsecond buckets.
+ * Bucket 0 holds samples under 1 us, bucket i holds [2^(i-1), 2^i) us and the
+ * last bucket everything above ~1 s. Recording is a couple of atomic adds.
+ */
+final class LatencyHistogram {
+
+    static final int BUCKETS = 22;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    void record(long nanos) {
+        long micros = Math.max(0L, nanos / 1_000L);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long maxMicros() {
+        return maxNanos.get() / 1_000L;
+    }
+
+    long meanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0L : totalNanos.sum() / n / 1_000L;
+    }
+
+    /**
+     * Upper bound (in microseconds) of the bucket holding the given quantile.
+     */
+    long percentileMicros(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,231 @@
+package com.jordansbored.coalore;
+
+import java.lang.reflect.InvocationTargetException;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Ore density from a seeded 3D value-noise field in world coordinates: a
+ * coarse octave stretched flat for long seams plus a finer octave for rough
+ * edges. A block becomes a candidate where the density beats a threshold that
+ * rises with height along the same t^(2/3) curve that pow(u, 1.5) gives the
+ * blob mode, so seams thin out towards MAX_Y.
+ *
+ * A chunk is evaluated one layer at a time: the lattice corners of the layer
+ * are hashed and interpolated in Y once (a few dozen hashes per 1024 blocks),
+ * each row is interpolated in Z, and the kernel expands the row along X and
+ * compares it with the threshold, returning a 32-bit mask. Cells are at
+ * least 8 blocks wide and chunk-aligned, so every 8-lane slice of a row lies
+ * in one cell and the kernel needs no gathers. It runs on the JDK Vector API
+ * when the jdk.incubator.vector module is present and as a scalar loop
+ * otherwise; both perform the same float operations and give the same bits.
+ *
+ * Thread-safe; buffers are kept per thread.
+ */
+final class NoiseOreField {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    // Vector API kernel, compiled in the vector source set
+    private static final String VECTOR_KERNEL = "com.jordansbored.coalore.VectorNoiseKernel";
+
+    // Coarse octave: 16x8x16 cells (flattened seams); fine octave: 8x4x8 cells
+    static final int COARSE_SHIFT_XZ = 4;
+    static final int COARSE_SHIFT_Y = 3;
+    static final int FINE_SHIFT_XZ = 3;
+    static final int FINE_SHIFT_Y = 2;
+    static final float COARSE_WEIGHT = 0.75f;
+    static final float FINE_WEIGHT = 0.25f;
+
+    // Lattice columns across one chunk, edges included
+    static final int COARSE_POINTS = (32 >> COARSE_SHIFT_XZ) + 1;
+    static final int FINE_POINTS = (32 >> FINE_SHIFT_XZ) + 1;
+
+    // Smoothstep weight of each block offset inside a cell
+    static final float[] COARSE_U = smoothTable(1 << COARSE_SHIFT_XZ);
+    static final float[] FINE_U = smoothTable(1 << FINE_SHIFT_XZ);
+
+    // Density needed at MIN_Y, and how much more is needed at MAX_Y
+    static final float BASE_THRESHOLD = 0.80f;
+    static final float HEIGHT_FALLOFF = 0.08f;
+
+    // Lattice hash constants (odd multipliers per axis, then a murmur-style finalizer)
+    private static final int HASH_X = 0x27D4EB2D;
+    private static final int HASH_Y = 0x165667B1;
+    private static final int HASH_Z = 0x9E3779B1;
+    private static final int HASH_MIX = 0x85EBCA6B;
+    private static final float UNIT = 1.0f / (1 << 24);
+
+    private static final long NOISE_SALT = 0x4E6F697365L;
+
+    /**
+     * Expands one interpolated row along X and compares it with the threshold.
+     */
+    interface RowKernel {
+        /**
+         * @param coarse the row's coarse octave values at its {@link #COARSE_POINTS} lattice columns
+         * @param fine the row's fine octave values at its {@link #FINE_POINTS} lattice columns
+         * @return bit x set where the density at chunk-local x exceeds the threshold
+         */
+        int rowMask(float[] coarse, float[] fine, float threshold);
+    }
+
+    private final RowKernel kernel;
+    private final int minY;
+    private final float[] thresholds;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    NoiseOreField(RowKernel kernel, int minY, int maxY) {
+        this.kernel = kernel;
+        this.minY = minY;
+        this.thresholds = new float[maxY - minY + 1];
+        for (int y = minY; y <= maxY; y++) {
+            double t = (double) (y - minY) / Math.max(1, maxY - minY);
+            thresholds[y - minY] = (float) (BASE_THRESHOLD + HEIGHT_FALLOFF * Math.pow(t, 2.0 / 3.0));
+        }
+    }
+
+    /**
+     * Field over [minY, maxY] using the fastest kernel this JVM supports.
+     */
+    static NoiseOreField create(int minY, int maxY) {
+        return new NoiseOreField(bestKernel(), minY, maxY);
+    }
+
+    /**
+     * The vector kernel if the incubator module is loaded (server started with
+     * {@code --add-modules jdk.incubator.vector}), else the scalar one.
+     */
+    static RowKernel bestKernel() {
+        if (VectorSupport.isModuleLoaded()) {
+            try {
+                return VectorSupport.newKernel(VECTOR_KERNEL, RowKernel.class);
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof UnsupportedOperationException)) {
+                    LOGGER.atWarning().withCause(e.getCause()).log("Vector API unavailable, using scalar noise");
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LOGGER.atWarning().withCause(e).log("Vector API unavailable, using scalar noise");
+            }
+        }
+        return NoiseOreField::scalarRowMask;
+    }
+
+    static RowKernel scalarKernel() {
+        return NoiseOreField::scalarRowMask;
+    }
+
+    /** Per-world noise seed, independent of the blob mode's chunk seeds. */
+    static int seedFor(long worldSeed) {
+        return (int) OreSeeds.mix64(worldSeed ^ NOISE_SALT);
+    }
+
+    boolean isVectorized() {
+        return kernel.getClass().getName().equals(VECTOR_KERNEL);
+    }
+
+    int minY() {
+        return minY;
+    }
+
+    int maxY() {
+        return minY + thresholds.length - 1;
+    }
+
+    /**
+     * Candidate masks for the 32 rows (one per chunk-local Z) of a chunk
+     * layer; y must be in the field's range.
+     */
+    void layerMasks(int seed, int chunkX, int chunkZ, int y, int[] masks) {
+        Buffers b = buffers.get();
+        grid(seed, chunkX, chunkZ, y, COARSE_SHIFT_XZ, COARSE_SHIFT_Y, COARSE_POINTS, b.coarseGrid);
+        grid(~seed, chunkX, chunkZ, y, FINE_SHIFT_XZ, FINE_SHIFT_Y, FINE_POINTS, b.fineGrid);
+        float threshold = thresholds[y - minY];
+
+        for (int z = 0; z < 32; z++) {
+            row(b.coarseGrid, COARSE_POINTS, z >> COARSE_SHIFT_XZ, COARSE_U[z & ((1 << COARSE_SHIFT_XZ) - 1)], b.coarseRow);
+            row(b.fineGrid, FINE_POINTS, z >> FINE_SHIFT_XZ, FINE_U[z & ((1 << FINE_SHIFT_XZ) - 1)], b.fineRow);
+            masks[z] = kernel.rowMask(b.coarseRow, b.fineRow, threshold);
+        }
+    }
+
+    /**
+     * Reference kernel; the vector kernel performs exactly these float
+     * operations, lane by lane.
+     */
+    static int scalarRowMask(float[] coarse, float[] fine, float threshold) {
+        int mask = 0;
+        for (int x = 0; x < 32; x++) {
+            int c = x >> COARSE_SHIFT_XZ;
+            int f = x >> FINE_SHIFT_XZ;
+            float coarseValue = COARSE_U[x & ((1 << COARSE_SHIFT_XZ) - 1)] * (coarse[c + 1] - coarse[c]) + coarse[c];
+            float fineValue = FINE_U[x & ((1 << FINE_SHIFT_XZ) - 1)] * (fine[f + 1] - fine[f]) + fine[f];
+            if (coarseValue * COARSE_WEIGHT + fineValue * FINE_WEIGHT > threshold) {
+                mask |= 1 << x;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Lattice values of one octave at the layer's height: corner values
+     * interpolated in Y, indexed [x point * points + z point].
+     */
+    private static void grid(int seed, int chunkX, int chunkZ, int y, int shiftXZ, int shiftY, int points, float[] out) {
+        int ix0 = (chunkX << 5) >> shiftXZ;
+        int iz0 = (chunkZ << 5) >> shiftXZ;
+        int iy = y >> shiftY;
+        float uy = smooth((y & ((1 << shiftY) - 1)) * (1.0f / (1 << shiftY)));
+        int hy0 = seed ^ (iy * HASH_Y);
+        int hy1 = seed ^ ((iy + 1) * HASH_Y);
+
+        for (int i = 0; i < points; i++) {
+            int hx = (ix0 + i) * HASH_X;
+            for (int k = 0; k < points; k++) {
+                int hxz = hx ^ ((iz0 + k) * HASH_Z);
+                float low = value(hxz ^ hy0);
+                out[i * points + k] = low + (value(hxz ^ hy1) - low) * uy;
+            }
+        }
+    }
+
+    /**
+     * Interpolate a grid along Z into the row values at each lattice column.
+     */
+    private static void row(float[] grid, int points, int cell, float uz, float[] out) {
+        for (int i = 0; i < points; i++) {
+            float low = grid[i * points + cell];
+            out[i] = low + (grid[i * points + cell + 1] - low) * uz;
+        }
+    }
+
+    private static float smooth(float f) {
+        return (f * f) * (3.0f - 2.0f * f);
+    }
+
+    private static float[] smoothTable(int cell) {
+        float[] table = new float[cell];
+        for (int i = 0; i < cell; i++) {
+            table[i] = smooth(i * (1.0f / cell));
+        }
+        return table;
+    }
+
+    /** Lattice value in [0, 1) from a combined corner hash. */
+    private static float value(int h) {
+        h ^= h >>> 15;
+        h *= HASH_MIX;
+        h ^= h >>> 13;
+        return (h >>> 8) * UNIT;
+    }
+
+    /**
+     * Per-thread grid and row buffers.
+     */
+    private static final class Buffers {
+        final float[] coarseGrid = new float[COARSE_POINTS * COARSE_POINTS];
+        final float[] fineGrid = new float[FINE_POINTS * FINE_POINTS];
+        final float[] coarseRow = new float[COARSE_POINTS];
+        final float[] fineRow = new float[FINE_POINTS];
+    }
+}
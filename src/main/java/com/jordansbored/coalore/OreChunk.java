@@ -0,0 +1,40 @@
+package com.jordansbored.coalore;
+
+/**
+ * The generator's view of a chunk: section-level block access and a dirty
+ * flag. Implemented over the server's chunks by {@link WorldChunkAdapter}
+ * and by an in-memory block array in the benchmarks, so generation code can
+ * be measured without a running server.
+ */
+interface OreChunk {
+
+    /** Chunk X coordinate (block X >> 5). */
+    int getX();
+
+    /** Chunk Z coordinate (block Z >> 5). */
+    int getZ();
+
+    /**
+     * Section at the given section Y (block Y >> 5).
+     * @return the section, or null if it is not available
+     */
+    OreSection section(int sectionY);
+
+    /**
+     * Y of the highest non-air block in a column (heightmap).
+     * @param x chunk-local X (0-31)
+     * @param z chunk-local Z (0-31)
+     */
+    int height(int x, int z);
+
+    /**
+     * Environment asset id at a block; environments carry the zone and biome
+     * the terrain was generated for.
+     * @param x chunk-local X (0-31)
+     * @param z chunk-local Z (0-31)
+     */
+    int environment(int x, int y, int z);
+
+    /** Flag the chunk as modified so it is saved. */
+    void markNeedsSaving();
+}
@@ -0,0 +1,326 @@
+package com.jordansbored.coalore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.math.vector.Transform;
+import com.hypixel.hytale.math.vector.Vector3d;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
+
+/**
+ * Collects planned chunks per world and applies them on the world thread
+ * within a fixed time budget per tick. Instead of one world task per chunk,
+ * each world gets at most one drain task per tick; plans that do not fit in
+ * the budget wait for the next tick. Plans are applied nearest to a player
+ * first, and plans for chunks that unloaded meanwhile are parked until the
+ * chunk loads again (see {@link ProximityPlanQueue}).
+ *
+ * Command jobs share the same budget: each world takes turns over its jobs,
+ * one step each, with whatever time natural generation left over (and at
+ * least one step per tick, so jobs never stall).
+ */
+final class OreGenerationScheduler {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    // Plans kept per world for chunks that unloaded before their turn
+    private static final int MAX_PARKED_PER_WORLD = 4096;
+
+    /**
+     * Applies a plan on the world thread.
+     */
+    interface PlanApplier {
+        /**
+         * @return false if the chunk is no longer available and the plan should be parked
+         */
+        boolean apply(World world, VeinPlan plan);
+    }
+
+    private final PlanApplier applier;
+    private final CoalOreMetrics metrics;
+    private final long budgetNanos;
+    private final long tickMillis;
+    private final Map<String, WorldQueue> queues = new ConcurrentHashMap<>();
+    private final Map<Integer, OreJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+    private final ScheduledExecutorService ticker;
+
+    OreGenerationScheduler(PlanApplier applier, CoalOreMetrics metrics, long budgetNanos, long tickMillis) {
+        this.applier = applier;
+        this.metrics = metrics;
+        this.budgetNanos = budgetNanos;
+        this.tickMillis = tickMillis;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CoalOre-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Run a background task periodically on the scheduler thread (never the world thread).
+     */
+    void every(long periodMillis, Runnable task) {
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.atWarning().withCause(e).log("Periodic ore task failed");
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Note a plan that is still being made for a chunk, so {@link #hasPlan}
+     * sees it already; queue it with {@link #submitExpected}, or call
+     * {@link #cancelExpected} if planning fails. Safe to call from any thread.
+     */
+    void expect(World world, int chunkX, int chunkZ) {
+        worldQueue(world).plans.expect(chunkX, chunkZ);
+    }
+
+    void submitExpected(World world, VeinPlan plan) {
+        metrics.maxQueueDepth.accumulate(worldQueue(world).plans.addExpected(plan));
+    }
+
+    void cancelExpected(World world, int chunkX, int chunkZ) {
+        worldQueue(world).plans.cancelExpected(chunkX, chunkZ);
+    }
+
+    /**
+     * Re-queue the plan parked for a chunk that is loading again; safe to
+     * call from any thread.
+     * @return true if the chunk had a parked plan
+     */
+    boolean resume(World world, int chunkX, int chunkZ) {
+        WorldQueue queue = queues.get(world.getName());
+        return queue != null && queue.plans.resume(chunkX, chunkZ);
+    }
+
+    /**
+     * Take the plan parked for a chunk that is loading again, for a caller
+     * that applies it itself; safe to call from any thread.
+     * @return the plan, or null if none is parked
+     */
+    VeinPlan takeParked(World world, int chunkX, int chunkZ) {
+        WorldQueue queue = queues.get(world.getName());
+        return queue == null ? null : queue.plans.takeParked(chunkX, chunkZ);
+    }
+
+    /**
+     * Take the plan queued or parked for a loaded chunk, for a caller that
+     * applies it itself. World thread only.
+     * @return the plan, or null if there is none (one still being made is not taken)
+     */
+    VeinPlan take(World world, int chunkX, int chunkZ) {
+        WorldQueue queue = queues.get(world.getName());
+        if (queue == null) {
+            return null;
+        }
+        VeinPlan plan = queue.plans.takeQueued(chunkX, chunkZ);
+        return plan != null ? plan : queue.plans.takeParked(chunkX, chunkZ);
+    }
+
+    /**
+     * Whether a plan for the chunk is queued or parked; safe to call from any thread.
+     */
+    boolean hasPlan(World world, int chunkX, int chunkZ) {
+        WorldQueue queue = queues.get(world.getName());
+        return queue != null && queue.plans.contains(chunkX, chunkZ);
+    }
+
+    int nextJobId() {
+        return jobIds.incrementAndGet();
+    }
+
+    /**
+     * Queue a command job for its world; it starts once it is prepared.
+     */
+    void submitJob(World world, OreJob job) {
+        jobs.put(job.id, job);
+        worldQueue(world).jobs.add(job);
+    }
+
+    /** Jobs that are preparing, running or waiting, in id order. */
+    List<OreJob> jobs() {
+        List<OreJob> active = new ArrayList<>(jobs.values());
+        active.sort((a, b) -> Integer.compare(a.id, b.id));
+        return active;
+    }
+
+    OreJob job(int id) {
+        return jobs.get(id);
+    }
+
+    private WorldQueue worldQueue(World world) {
+        return queues.computeIfAbsent(world.getName(), name -> new WorldQueue(world, metrics));
+    }
+
+    /** Plans waiting to be applied, over all worlds. */
+    int queueDepth() {
+        int depth = 0;
+        for (WorldQueue queue : queues.values()) {
+            depth += queue.plans.size();
+        }
+        return depth;
+    }
+
+    /** Plans parked for unloaded chunks, over all worlds. */
+    int parkedCount() {
+        int parked = 0;
+        for (WorldQueue queue : queues.values()) {
+            parked += queue.plans.parked();
+        }
+        return parked;
+    }
+
+    /**
+     * Post one drain task to every world that has work and no drain pending.
+     */
+    private void tick() {
+        try {
+            for (WorldQueue queue : queues.values()) {
+                if ((queue.plans.size() > 0 || !queue.jobs.isEmpty()) && queue.drainScheduled.compareAndSet(false, true)) {
+                    queue.world.execute(() -> drain(queue));
+                }
+            }
+        } catch (Exception e) {
+            // Never let an exception cancel the repeating tick
+            LOGGER.atWarning().withCause(e).log("Ore scheduler tick failed");
+        }
+    }
+
+    /**
+     * Apply queued plans, then job steps, until the tick budget is used up.
+     * Runs on the world thread.
+     */
+    private void drain(WorldQueue queue) {
+        long deadline = System.nanoTime() + budgetNanos;
+        try {
+            World world = queue.world;
+            int players = queue.plans.size() > 0 ? playerChunks(queue) : 0;
+            queue.plans.drain(queue.playerChunkX, queue.playerChunkZ, players,
+                (chunkX, chunkZ) -> world.getNonTickingChunk(ChunkUtil.indexChunkFromBlock(chunkX << 5, chunkZ << 5)) != null,
+                plan -> applier.apply(world, plan), deadline);
+            drainJobs(queue, deadline);
+        } finally {
+            queue.drainScheduled.set(false);
+        }
+    }
+
+    /**
+     * Collect the chunk positions of the world's players into the queue's
+     * arrays, for ordering its plans. Runs on the world thread.
+     * @return number of players collected
+     */
+    private static int playerChunks(WorldQueue queue) {
+        int players = 0;
+        for (PlayerRef player : queue.world.getPlayerRefs()) {
+            Transform transform = player.getTransform();
+            if (transform == null) {
+                continue;
+            }
+            if (players == queue.playerChunkX.length) {
+                queue.playerChunkX = Arrays.copyOf(queue.playerChunkX, players * 2);
+                queue.playerChunkZ = Arrays.copyOf(queue.playerChunkZ, players * 2);
+            }
+            Vector3d pos = transform.getPosition();
+            queue.playerChunkX[players] = (int) Math.floor(pos.x) >> 5;
+            queue.playerChunkZ[players] = (int) Math.floor(pos.z) >> 5;
+            players++;
+        }
+        return players;
+    }
+
+    /**
+     * Run steps of the world's jobs with the remaining budget, one step per
+     * job in turn, so a long job (a pregen run) does not hold back the jobs
+     * queued after it. Each tick starts one job further along, so a budget
+     * that fits a single step still reaches every job. At least one step runs
+     * per tick even when natural generation used the budget up.
+     */
+    private void drainJobs(WorldQueue queue, long deadline) {
+        List<OreJob> active = new ArrayList<>();
+        for (OreJob job : queue.jobs) {
+            if (job.isCancelled() || (job.isPrepared() && !job.hasMoreSteps() && job.isSettled())) {
+                queue.jobs.remove(job);
+                jobs.remove(job.id);
+                job.finish();
+            } else if (job.isPrepared() && job.hasMoreSteps()) {
+                active.add(job); // the others are still preparing or waiting on off-thread work
+            }
+        }
+        if (active.isEmpty()) {
+            return;
+        }
+        Collections.rotate(active, -(queue.nextJob++ % active.size()));
+
+        List<OreJob> stepped = new ArrayList<>(active.size());
+        boolean applied = false;
+        while (!active.isEmpty()) {
+            for (Iterator<OreJob> it = active.iterator(); it.hasNext(); ) {
+                if (applied && System.nanoTime() >= deadline) {
+                    stepped.forEach(OreJob::reportProgress);
+                    return;
+                }
+                OreJob job = it.next();
+                boolean ready = true;
+                try {
+                    ready = job.applyNext(queue.world);
+                } catch (Exception e) {
+                    LOGGER.atWarning().withCause(e).log("Job #%d (%s) failed, cancelling it", job.id, job.kind);
+                    job.cancel();
+                }
+                applied = true;
+                if (!stepped.contains(job)) {
+                    stepped.add(job);
+                }
+                if (!ready || job.isCancelled() || !job.hasMoreSteps()) {
+                    it.remove(); // the step asked to wait until next tick, or the job is done
+                }
+            }
+        }
+        stepped.forEach(OreJob::reportProgress);
+    }
+
+    private static final class WorldQueue {
+        final World world;
+        final ProximityPlanQueue plans;
+        final AtomicBoolean drainScheduled = new AtomicBoolean();
+        final Queue<OreJob> jobs = new ConcurrentLinkedQueue<>();
+        // Where the next tick's round of job steps starts; world thread only
+        int nextJob;
+
+        // Player chunk positions, reused by each refresh on the world thread
+        int[] playerChunkX = new int[8];
+        int[] playerChunkZ = new int[8];
+
+        WorldQueue(World world, CoalOreMetrics metrics) {
+            this.world = world;
+            this.plans = new ProximityPlanQueue(metrics, MAX_PARKED_PER_WORLD);
+        }
+    }
+}
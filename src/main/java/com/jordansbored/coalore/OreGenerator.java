@@ -0,0 +1,135 @@
+package com.jordansbored.coalore;
+
+import java.util.random.RandomGenerator;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.util.ChunkUtil;
+
+/**
+ * World-facing half of ore generation: writes planned and command-spawned
+ * veins into chunks. Works against {@link OreChunk}/{@link OreWorld} so the
+ * same code runs on server chunks and on in-memory chunks in benchmarks.
+ *
+ * Thread-safe; buffers are kept per thread.
+ */
+final class OreGenerator {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    // Reusable vein bitmask/buffers; world threads may run in parallel so keep one per thread
+    private final ThreadLocal<VeinRasterizer> rasterizers = ThreadLocal.withInitial(VeinRasterizer::new);
+
+    // Section-batched ore writers, one per thread, sharing the failure counter
+    private final ThreadLocal<SectionBatchWriter> writers;
+
+    private final CoalOreMetrics metrics;
+    private final boolean debugLogging;
+
+    OreGenerator(CoalOreMetrics metrics, boolean debugLogging) {
+        this.metrics = metrics;
+        this.debugLogging = debugLogging;
+        this.writers = ThreadLocal.withInitial(() -> new SectionBatchWriter(metrics.writeFailures));
+    }
+
+    /**
+     * Apply a vein plan to its chunk, finishing veins carried over from
+     * neighbours and parking the blocks that spill out of it.
+     * @return the number of blocks placed
+     */
+    int applyPlan(OreChunk chunk, VeinPlan plan, PendingOreStore pending, OreVariantTable table) {
+        long chunkStart = System.nanoTime();
+        long chunkIndex = ChunkUtil.indexChunkFromBlock(plan.chunkX << 5, plan.chunkZ << 5);
+
+        // Finish veins that neighbouring chunks started across our border
+        SectionBatchWriter writer = writers.get();
+        writer.clear();
+        long[] carried;
+        synchronized (pending) {
+            carried = pending.claim(chunkIndex);
+            for (int i = 0; i < plan.overflowCount(); i++) {
+                long block = plan.overflow(i);
+                pending.park(ChunkUtil.indexChunkFromBlock(PackedBlockPos.x(block), PackedBlockPos.z(block)), block);
+            }
+        }
+        for (long block : carried) {
+            writer.add(block);
+        }
+        for (int i = 0; i < plan.blockCount(); i++) {
+            writer.add(plan.block(i));
+        }
+
+        // Write everything section by section in one pass
+        int totalPlaced = writer.flush(chunk, table);
+
+        long elapsed = System.nanoTime() - chunkStart;
+        metrics.applyTime.record(elapsed);
+        metrics.chunksApplied.increment();
+        metrics.blocksPlaced.add(totalPlaced);
+        if (debugLogging && plan.blockCount() > 0) {
+            LOGGER.atInfo().log("Generated %d coal ore veins (%d blocks) in chunk [%d, %d] in %d us",
+                plan.veins, totalPlaced, plan.chunkX, plan.chunkZ, elapsed / 1_000L);
+        }
+        return totalPlaced;
+    }
+
+    /**
+     * Write one chunk batch of a command job, recording what it replaced.
+     * @return the number of blocks placed
+     */
+    int applyBatch(OreChunk chunk, VeinPlan batch, OreVariantTable table, ChangeJournal journal) {
+        SectionBatchWriter writer = writers.get();
+        writer.clear();
+        for (int i = 0; i < batch.blockCount(); i++) {
+            writer.add(batch.block(i));
+        }
+        journal.beginChunk(chunk.getX(), chunk.getZ());
+        int placed = writer.flush(chunk, table, journal);
+        journal.endChunk();
+        metrics.commandBlocksPlaced.add(placed);
+        return placed;
+    }
+
+    /**
+     * Spawn a blob-shaped vein around a position (for commands). Chunks that
+     * are not loaded are skipped.
+     * @return the number of blocks placed
+     */
+    int spawnVein(OreWorld world, OreVariantTable table, int centerX, int centerY, int centerZ, int size, RandomGenerator random) {
+        long start = System.nanoTime();
+        int placed = 0;
+        int chunkLookups = 0;
+
+        VeinRasterizer rasterizer = rasterizers.get();
+        int candidateChecks = rasterizer.rasterize(centerX, centerY, centerZ, size, random);
+        if (candidateChecks == 0) {
+            return 0;
+        }
+
+        // A vein spans at most a handful of chunks: fetch each one once and
+        // write the blocks that fall inside it in one section-batched pass
+        SectionBatchWriter writer = writers.get();
+        for (int cx = rasterizer.minX() >> 5; cx <= rasterizer.maxX() >> 5; cx++) {
+            for (int cz = rasterizer.minZ() >> 5; cz <= rasterizer.maxZ() >> 5; cz++) {
+                OreChunk chunk = world.chunk(cx, cz);
+                chunkLookups++;
+                if (chunk == null) continue;
+
+                writer.clear();
+                for (int i = 0; i < candidateChecks; i++) {
+                    long block = rasterizer.block(i);
+                    if ((PackedBlockPos.x(block) >> 5) == cx && (PackedBlockPos.z(block) >> 5) == cz) {
+                        writer.add(block);
+                    }
+                }
+                placed += writer.flush(chunk, table);
+            }
+        }
+
+        metrics.commandBlocksPlaced.add(placed);
+        if (debugLogging) {
+            long elapsedUs = (System.nanoTime() - start) / 1_000L;
+            LOGGER.atInfo().log("spawnVein: size=%d candidates=%d chunks=%d placed=%d timeUs=%d", size, candidateChecks, chunkLookups, placed, elapsedUs);
+        }
+        return placed;
+    }
+}
@@ -0,0 +1,223 @@
+package com.jordansbored.coalore;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.hypixel.hytale.server.core.universe.world.World;
+
+/**
+ * A command-issued job (generate, fill, scan, purge, undo, pregen) that
+ * works through a list of chunks on the world thread, a few steps per tick,
+ * until it is done or cancelled. The steps are supplied once the job is
+ * prepared, which for generate/fill means planned on the planner pool.
+ *
+ * Progress fields are written by the world thread and read by the jobs
+ * command, so they are volatile; steps only run on the world thread. A step
+ * may hand work off to another thread ({@link #beginAsync}); the job then
+ * finishes once that work has ended too.
+ */
+final class OreJob {
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * One unit of work, usually one chunk. Runs on the world thread.
+     */
+    interface Step {
+        /**
+         * @return blocks affected by the step, -1 if its chunk was not loaded,
+         *         or {@link #NOT_READY} to run the same step again next tick
+         */
+        int apply(World world, int step);
+    }
+
+    /** Step result: nothing done yet, retry the step on the next tick. */
+    static final int NOT_READY = -2;
+
+    /**
+     * Applies one chunk batch of a generate/fill job.
+     */
+    interface BatchApplier {
+        /**
+         * @return the number of blocks placed, or -1 if the chunk is not loaded
+         */
+        int apply(World world, VeinPlan batch);
+    }
+
+    final int id;
+    final String kind;
+    final String worldName;
+    // What the counted blocks are, e.g. "placed" or "found"
+    private final String verb;
+    private final Consumer<String> reporter;
+    private final long startedAt = System.nanoTime();
+
+    private volatile Step step;
+    private volatile int totalSteps;
+    private volatile int nextStep;
+    private final LongAdder blocks = new LongAdder();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile int skippedChunks;
+    private final AtomicInteger failedChunks = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private volatile Runnable onDone;
+    private long lastReport = startedAt;
+
+    /**
+     * @param reporter receives progress lines for the issuer; called on the world thread
+     */
+    OreJob(int id, String kind, String worldName, String verb, Consumer<String> reporter) {
+        this.id = id;
+        this.kind = kind;
+        this.worldName = worldName;
+        this.verb = verb;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Hand over the work; called once when the job is ready to run.
+     * @param onDone extra reporting when the job completes (not when cancelled), or null
+     */
+    void prepared(int totalSteps, Step step, Runnable onDone) {
+        this.totalSteps = totalSteps;
+        this.onDone = onDone;
+        this.step = step; // published last: isPrepared() reads it first
+    }
+
+    /** Convenience for generate/fill: one step per planned chunk batch. */
+    void prepared(List<VeinPlan> batches, BatchApplier applier) {
+        prepared(batches.size(), (world, i) -> applier.apply(world, batches.get(i)), null);
+    }
+
+    boolean isPrepared() {
+        return step != null;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Ask the job to stop; the scheduler drops it on its next tick.
+     * @return false if it had already finished or been cancelled
+     */
+    boolean cancel() {
+        if (finished || cancelled) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    boolean hasMoreSteps() {
+        return step == null || nextStep < totalSteps;
+    }
+
+    /** Note work a step started that ends off the world thread. */
+    void beginAsync() {
+        outstanding.incrementAndGet();
+    }
+
+    void endAsync() {
+        outstanding.decrementAndGet();
+    }
+
+    /** True once no work started by a step is still running elsewhere. */
+    boolean isSettled() {
+        return outstanding.get() == 0;
+    }
+
+    /** Count a chunk whose off-thread work failed; safe to call from any thread. */
+    void failed() {
+        failedChunks.incrementAndGet();
+    }
+
+    /** Count blocks affected off the world thread; safe to call from any thread. */
+    void addBlocks(int count) {
+        blocks.add(count);
+    }
+
+    /**
+     * Run the next step on the world thread; only call when prepared and
+     * {@link #hasMoreSteps()}.
+     * @return false if the step was not ready and should be retried next tick
+     */
+    boolean applyNext(World world) {
+        int result = step.apply(world, nextStep);
+        if (result == NOT_READY) {
+            return false;
+        }
+        nextStep = nextStep + 1;
+        if (result < 0) {
+            skippedChunks++;
+        } else {
+            blocks.add(result);
+        }
+        return true;
+    }
+
+    /** Mark the job done (or cancelled) and tell the issuer. */
+    void finish() {
+        finished = true;
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt);
+        if (cancelled) {
+            reporter.accept("Job #" + id + " (" + kind + ") cancelled after " + nextStep + " chunks, " + blocks.sum() + " blocks " + verb + failures());
+            return;
+        }
+        reporter.accept("Job #" + id + " (" + kind + ") done: " + blocks.sum() + " coal ore blocks " + verb + " over "
+            + totalSteps + " chunks in " + seconds + "s" + (skippedChunks > 0 ? " (" + skippedChunks + " unloaded chunks skipped)" : "")
+            + failures());
+        Runnable done = onDone;
+        if (done != null) {
+            done.run();
+        }
+    }
+
+    /** Tell the issuer how far the job is, at most every few seconds. */
+    void reportProgress() {
+        long now = System.nanoTime();
+        if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+            lastReport = now;
+            reporter.accept(describe());
+        }
+    }
+
+    /** Send an extra line to the issuer. */
+    void report(String line) {
+        reporter.accept(line);
+    }
+
+    /** One-line status for the jobs command and progress reports. */
+    String describe() {
+        String progress = step == null ? "preparing"
+            : nextStep + "/" + totalSteps + " chunks (" + (totalSteps == 0 ? 100 : nextStep * 100 / totalSteps) + "%)" + rate();
+        return "Job #" + id + " " + kind + " in " + worldName + ": " + progress + ", " + blocks.sum() + " blocks " + verb
+            + failures() + (cancelled ? " [cancelling]" : "");
+    }
+
+    private String failures() {
+        int failed = failedChunks.get();
+        return failed > 0 ? ", " + failed + " chunks failed" : "";
+    }
+
+    /** Chunks per second so far and the time left at that rate. */
+    private String rate() {
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        int done = nextStep;
+        if (done == 0 || seconds < 1) {
+            return "";
+        }
+        double perSecond = done / seconds;
+        long eta = Math.round((totalSteps - done) / perSecond);
+        return String.format(Locale.ROOT, ", %.1f chunks/s, ETA %dm%02ds", perSecond, eta / 60, eta % 60);
+    }
+}
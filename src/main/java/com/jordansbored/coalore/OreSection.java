@@ -0,0 +1,27 @@
+package com.jordansbored.coalore;
+
+/**
+ * A 32x32x32 block section of an {@link OreChunk}. Coordinates are
+ * section-local (0-31 on each axis).
+ */
+interface OreSection {
+
+    int get(int x, int y, int z);
+
+    /**
+     * @return true if the block was changed
+     */
+    boolean set(int x, int y, int z, int blockId);
+
+    /**
+     * Copy every block id of the section into {@code out}, at index
+     * {@code (y << 10) | (z << 5) | x}; {@code out} holds at least 32768 ids.
+     */
+    void read(int[] out);
+
+    /** True if the section holds nothing but air, so no ore can go into it. */
+    boolean isAir();
+
+    /** Notify that the section changed (resync to clients, caches). Called once per batch. */
+    void invalidate();
+}
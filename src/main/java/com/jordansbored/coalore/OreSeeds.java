@@ -0,0 +1,41 @@
+package com.jordansbored.coalore;
+
+/**
+ * Seed derivation for natural generation. Every chunk gets a seed mixed from
+ * the world seed and its coordinates, and every vein in it a seed mixed from
+ * the chunk seed and the vein's index. Each vein therefore has its own
+ * stream: veins can be planned in any order, or in parallel, and still come
+ * out identical, and different worlds get different coal.
+ */
+final class OreSeeds {
+
+    // SplitMix64 increment (odd, golden ratio); spreads consecutive indices apart
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // Large odd multipliers so (x, z) and (z, x) land on different seeds
+    private static final long CHUNK_X_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+    private static final long CHUNK_Z_MULTIPLIER = 0x165667B19E3779F9L;
+
+    private OreSeeds() {
+    }
+
+    static long chunkSeed(long worldSeed, int chunkX, int chunkZ) {
+        long h = mix64(worldSeed + GOLDEN_GAMMA);
+        h = mix64(h ^ (chunkX * CHUNK_X_MULTIPLIER));
+        return mix64(h ^ (chunkZ * CHUNK_Z_MULTIPLIER));
+    }
+
+    static long veinSeed(long chunkSeed, int veinIndex) {
+        return mix64(chunkSeed + (veinIndex + 1L) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * SplitMix64 finalizer: a bijective 64-bit mix where every input bit
+     * affects every output bit.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,227 @@
+package com.jordansbored.coalore;
+
+import java.util.Arrays;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+
+/**
+ * Dense block id remap table: indexed by the id of a host block, it holds the
+ * id of the coal ore variant that should replace it, or -1 when the block is
+ * not replaceable. Checking and choosing the ore is a single array load.
+ *
+ * The inverse direction (ore variant -> the rock it is restored to, and a
+ * display name) backs scanning and purging.
+ *
+ * Immutable after construction and safe to share between threads.
+ */
+final class OreVariantTable {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    static final int NOT_REPLACEABLE = -1;
+
+    // Fallback variant, also used for soil and rocks without a dedicated ore
+    static final String DEFAULT_ORE = "Ore_Coal_Stone";
+
+    // Host block -> ore variant, in pairs
+    private static final String[][] HOST_TO_ORE = {
+        {"Rock_Stone", "Ore_Coal_Stone"},
+        {"Rock_Stone_Cobble", "Ore_Coal_Stone"},
+        {"Rock_Stone_Mossy", "Ore_Coal_Stone"},
+        {"Rock_Granite", "Ore_Coal_Stone"},
+        {"Rock_Granite_Cobble", "Ore_Coal_Stone"},
+        {"Dirt", "Ore_Coal_Stone"},
+        {"Dirt_Grass", "Ore_Coal_Stone"},
+        {"Dirt_Dry", "Ore_Coal_Stone"},
+        {"Gravel", "Ore_Coal_Stone"},
+        {"Clay", "Ore_Coal_Stone"},
+        {"Rock_Sandstone", "Ore_Coal_Sandstone"},
+        {"Rock_Sandstone_Cobble", "Ore_Coal_Sandstone"},
+        {"Rock_Sandstone_Red", "Ore_Coal_Sandstone_Red"},
+        {"Rock_Sandstone_White", "Ore_Coal_Sandstone_White"},
+        {"Rock_Basalt", "Ore_Coal_Basalt"},
+        {"Rock_Basalt_Cobble", "Ore_Coal_Basalt"},
+        {"Rock_Marble", "Ore_Coal_Marble"},
+        {"Rock_Marble_Cobble", "Ore_Coal_Marble"},
+        {"Rock_Slate", "Ore_Coal_Slate"},
+        {"Rock_Shale", "Ore_Coal_Shale"},
+        {"Rock_Volcanic", "Ore_Coal_Volcanic"},
+        {"Rock_Quartzite", "Ore_Coal_Quartzite"},
+        {"Rock_Aqua", "Ore_Coal_Aqua"}
+    };
+
+    private final int[] oreByHost;
+    private final BlockType[] oreTypeByHost;
+
+    // Inverse: ore id -> variant index (or -1), and per variant its ore id, restore host and name
+    private final int[] variantByOre;
+    private final int[] oreIds;
+    private final int[] hostIds;
+    private final String[] names;
+    private final int minOreId;
+    private final int maxOreId;
+
+    /**
+     * Table without asset names; each ore restores to its lowest host id.
+     */
+    OreVariantTable(int[] oreByHost, BlockType[] oreTypeByHost) {
+        this(oreByHost, oreTypeByHost, null, null);
+    }
+
+    /**
+     * @param preferredHostByOre rock each ore id restores to, or null to pick the lowest host id
+     * @param nameByOre display name per ore id, or null to use the ids
+     */
+    OreVariantTable(int[] oreByHost, BlockType[] oreTypeByHost, int[] preferredHostByOre, String[] nameByOre) {
+        this.oreByHost = oreByHost;
+        this.oreTypeByHost = oreTypeByHost;
+
+        int maxOre = -1;
+        int minOre = Integer.MAX_VALUE;
+        for (int ore : oreByHost) {
+            if (ore != NOT_REPLACEABLE) {
+                maxOre = Math.max(maxOre, ore);
+                minOre = Math.min(minOre, ore);
+            }
+        }
+        this.maxOreId = maxOre;
+        this.minOreId = maxOre < 0 ? 0 : minOre;
+        this.variantByOre = new int[maxOre + 1];
+        Arrays.fill(variantByOre, NOT_REPLACEABLE);
+
+        int[] ores = new int[oreByHost.length];
+        int[] hosts = new int[oreByHost.length];
+        int variants = 0;
+        for (int host = 0; host < oreByHost.length; host++) {
+            int ore = oreByHost[host];
+            if (ore == NOT_REPLACEABLE || variantByOre[ore] != NOT_REPLACEABLE) {
+                continue;
+            }
+            variantByOre[ore] = variants;
+            ores[variants] = ore;
+            hosts[variants] = preferredHostByOre != null && ore < preferredHostByOre.length && preferredHostByOre[ore] >= 0
+                ? preferredHostByOre[ore] : host;
+            variants++;
+        }
+        this.oreIds = Arrays.copyOf(ores, variants);
+        this.hostIds = Arrays.copyOf(hosts, variants);
+        this.names = new String[variants];
+        for (int v = 0; v < variants; v++) {
+            String name = nameByOre != null && oreIds[v] < nameByOre.length ? nameByOre[oreIds[v]] : null;
+            names[v] = name != null ? name : "ore#" + oreIds[v];
+        }
+    }
+
+    /**
+     * Build the table from the loaded block assets.
+     * @return the table, or null if the default coal ore block is missing
+     */
+    static OreVariantTable fromAssets() {
+        int defaultOreId = BlockType.getAssetMap().getIndex(DEFAULT_ORE);
+        BlockType defaultOreType = BlockType.getAssetMap().getAsset(DEFAULT_ORE);
+        if (defaultOreId < 0 || defaultOreType == null) {
+            LOGGER.atWarning().log("Coal ore block type '%s' not found! Natural generation disabled.", DEFAULT_ORE);
+            return null;
+        }
+
+        int[] hostIds = new int[HOST_TO_ORE.length];
+        int maxHostId = -1;
+        for (int i = 0; i < HOST_TO_ORE.length; i++) {
+            hostIds[i] = BlockType.getAssetMap().getIndex(HOST_TO_ORE[i][0]);
+            maxHostId = Math.max(maxHostId, hostIds[i]);
+        }
+
+        int[] oreByHost = new int[maxHostId + 1];
+        BlockType[] oreTypeByHost = new BlockType[maxHostId + 1];
+        Arrays.fill(oreByHost, NOT_REPLACEABLE);
+        // Sized lazily below; ore ids are not bounded by host ids
+        int[] hostByOre = new int[0];
+        String[] nameByOre = new String[0];
+
+        int variants = 0;
+        for (int i = 0; i < HOST_TO_ORE.length; i++) {
+            int hostId = hostIds[i];
+            if (hostId < 0) {
+                continue; // host rock not present in this asset set
+            }
+
+            String oreName = HOST_TO_ORE[i][1];
+            int oreId = BlockType.getAssetMap().getIndex(oreName);
+            BlockType oreType = BlockType.getAssetMap().getAsset(oreName);
+            if (oreId < 0 || oreType == null) {
+                LOGGER.atWarning().log("Coal ore variant '%s' not found, using %s on %s", oreName, DEFAULT_ORE, HOST_TO_ORE[i][0]);
+                oreId = defaultOreId;
+                oreType = defaultOreType;
+            } else if (oreId != defaultOreId) {
+                variants++;
+            }
+            oreByHost[hostId] = oreId;
+            oreTypeByHost[hostId] = oreType;
+
+            // The first host listed for an ore is the rock it is purged back to
+            if (oreId >= hostByOre.length) {
+                int oldLength = hostByOre.length;
+                hostByOre = Arrays.copyOf(hostByOre, oreId + 1);
+                nameByOre = Arrays.copyOf(nameByOre, oreId + 1);
+                Arrays.fill(hostByOre, oldLength, hostByOre.length, NOT_REPLACEABLE);
+            }
+            if (hostByOre[oreId] == NOT_REPLACEABLE) {
+                hostByOre[oreId] = hostId;
+                nameByOre[oreId] = oreId == defaultOreId ? DEFAULT_ORE : oreName;
+            }
+        }
+
+        LOGGER.atInfo().log("Initialized coal ore generation - default ore ID: %d, %d host-specific variants, table size %d",
+            defaultOreId, variants, oreByHost.length);
+        return new OreVariantTable(oreByHost, oreTypeByHost, hostByOre, nameByOre);
+    }
+
+    /**
+     * @return the ore variant id for this host block, or {@link #NOT_REPLACEABLE}
+     */
+    int oreFor(int blockId) {
+        return blockId >= 0 && blockId < oreByHost.length ? oreByHost[blockId] : NOT_REPLACEABLE;
+    }
+
+    /**
+     * Block type matching {@link #oreFor}; only valid when that returned an id.
+     */
+    BlockType oreTypeFor(int blockId) {
+        return oreTypeByHost[blockId];
+    }
+
+    boolean isReplaceable(int blockId) {
+        return oreFor(blockId) != NOT_REPLACEABLE;
+    }
+
+    /** Smallest ore id in the table; with {@link #maxOreId} a cheap prefilter for scans. */
+    int minOreId() {
+        return minOreId;
+    }
+
+    /** Largest ore id in the table, or -1 if there is none. */
+    int maxOreId() {
+        return maxOreId;
+    }
+
+    int variantCount() {
+        return oreIds.length;
+    }
+
+    /**
+     * @return the variant index of an ore block id, or {@link #NOT_REPLACEABLE} if it is not a coal ore
+     */
+    int variantOf(int blockId) {
+        return blockId >= 0 && blockId < variantByOre.length ? variantByOre[blockId] : NOT_REPLACEABLE;
+    }
+
+    String variantName(int variant) {
+        return names[variant];
+    }
+
+    /** Rock block id a variant is turned back into when purging. */
+    int hostOf(int variant) {
+        return hostIds[variant];
+    }
+}
@@ -0,0 +1,100 @@
+package com.jordansbored.coalore;
+
+/**
+ * A generated coal vein as recorded in the vein index: its center, bounding
+ * box, ore variant and planned block count. Returned by
+ * {@link CoalOrePlugin#findVeins}; coordinates are world block coordinates.
+ *
+ * Noise-mode seams are recorded as one entry per chunk covering all of that
+ * chunk's seam blocks, with the centroid as center.
+ */
+public final class OreVein {
+
+    private final int x;
+    private final int y;
+    private final int z;
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+    private final String variant;
+    private final int blockCount;
+    private final double distance;
+
+    OreVein(int x, int y, int z, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+            String variant, int blockCount, double distance) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.variant = variant;
+        this.blockCount = blockCount;
+        this.distance = distance;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /**
+     * Ore block type name at the vein's center (e.g. {@code Ore_Coal_Stone}),
+     * or {@code "mixed"} when the center is not a coal ore block.
+     */
+    public String getVariant() {
+        return variant;
+    }
+
+    /** Blocks planned for the vein, including ones that spilled into neighbouring chunks. */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /** Distance from the queried position to the center, in blocks. */
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return variant + " x" + blockCount + " at (" + x + ", " + y + ", " + z + ")";
+    }
+}
@@ -0,0 +1,13 @@
+package com.jordansbored.coalore;
+
+/**
+ * The generator's view of a world for command-driven placement, which may
+ * span several chunks.
+ */
+interface OreWorld {
+
+    /**
+     * @return the chunk at the given chunk coordinates, or null if it is not available
+     */
+    OreChunk chunk(int chunkX, int chunkZ);
+}
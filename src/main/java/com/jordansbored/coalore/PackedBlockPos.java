@@ -0,0 +1,37 @@
+package com.jordansbored.coalore;
+
+/**
+ * Packs block coordinates into a single primitive long so placements can be
+ * buffered without allocating an object per block.
+ *
+ * Layout: x in the top 26 bits, z in the next 26 bits, y in the low 12 bits.
+ * All three are sign-extended when unpacked.
+ */
+final class PackedBlockPos {
+
+    private static final int XZ_BITS = 26;
+    private static final int Y_BITS = 12;
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1L;
+    private static final long Y_MASK = (1L << Y_BITS) - 1L;
+    private static final int X_SHIFT = XZ_BITS + Y_BITS;
+    private static final int Z_SHIFT = Y_BITS;
+
+    private PackedBlockPos() {
+    }
+
+    static long pack(int x, int y, int z) {
+        return ((x & XZ_MASK) << X_SHIFT) | ((z & XZ_MASK) << Z_SHIFT) | (y & Y_MASK);
+    }
+
+    static int x(long packed) {
+        return (int) (packed >> X_SHIFT);
+    }
+
+    static int y(long packed) {
+        return (int) (packed << (64 - Y_BITS) >> (64 - Y_BITS));
+    }
+
+    static int z(long packed) {
+        return (int) (packed << (64 - X_SHIFT) >> (64 - XZ_BITS));
+    }
+}
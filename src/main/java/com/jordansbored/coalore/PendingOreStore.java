@@ -0,0 +1,334 @@
+package com.jordansbored.coalore;
+
+import java.util.Arrays;
+
+/**
+ * Parks vein blocks that spill over a chunk border until the neighbouring
+ * chunk is generated, so veins are not clipped flat at chunk edges.
+ *
+ * Internally this is an open-addressing map from chunk index to a growable
+ * array of packed block coordinates (see {@link PackedBlockPos}), with no
+ * boxing. Memory is bounded by a maximum number of chunks and blocks; when
+ * either is exceeded the oldest chunk entry is evicted.
+ *
+ * Once a chunk has been claimed (generated), a marker remembers it so blocks
+ * spilling into it later are dropped instead of parked forever. Markers live
+ * in a separate set of up to {@code maxChunks} chunks, oldest dropped first,
+ * so they never take room from parked blocks.
+ *
+ * Not thread-safe; keep one store per world and hold its monitor while
+ * claiming or parking, since chunks can be applied from the world thread
+ * and from chunk pre-load hooks at the same time.
+ */
+final class PendingOreStore {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int INITIAL_BUCKET = 16;
+
+    private final int maxChunks;
+    private final int maxBlocks;
+
+    // Open-addressing table, capacity fixed at construction
+    private final int mask;
+    private final long[] keys;
+    private final boolean[] used;
+    private final long[][] buckets;
+    private final int[] counts;
+    private final long[] seqs;
+    private int entries;
+    private int blocks;
+
+    // Insertion order ring for eviction; slots of claimed entries go stale and are
+    // skipped via the sequence number, or compacted away when the ring fills up
+    private final long[] orderKeys;
+    private final long[] orderSeqs;
+    private int orderHead;
+    private int orderSize;
+    private long nextSeq;
+
+    // Chunks claimed as generated
+    private final ChunkSet generated;
+
+    private long evictedChunks;
+    private long evictedBlocks;
+    private long droppedBlocks;
+
+    PendingOreStore(int maxChunks, int maxBlocks) {
+        this.maxChunks = maxChunks;
+        this.maxBlocks = maxBlocks;
+
+        int capacity = Integer.highestOneBit(Math.max(4, maxChunks) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.used = new boolean[capacity];
+        this.buckets = new long[capacity][];
+        this.counts = new int[capacity];
+        this.seqs = new long[capacity];
+        this.orderKeys = new long[maxChunks];
+        this.orderSeqs = new long[maxChunks];
+        this.generated = new ChunkSet(maxChunks);
+    }
+
+    /**
+     * Park a block for a chunk that has not been generated yet.
+     * @return false if the chunk was already generated and the block was dropped
+     */
+    boolean park(long chunkIndex, long packedPos) {
+        if (generated.contains(chunkIndex)) {
+            droppedBlocks++;
+            return false; // neighbour already generated
+        }
+
+        int slot = find(chunkIndex);
+        if (blocks >= maxBlocks) {
+            while (blocks >= maxBlocks) {
+                evictOldest();
+            }
+            slot = find(chunkIndex); // eviction may have moved or removed the entry
+        }
+        if (slot < 0) {
+            slot = insert(chunkIndex, new long[INITIAL_BUCKET]);
+        }
+
+        long[] bucket = buckets[slot];
+        int count = counts[slot];
+        if (count == bucket.length) {
+            bucket = Arrays.copyOf(bucket, count * 2);
+            buckets[slot] = bucket;
+        }
+        bucket[count] = packedPos;
+        counts[slot] = count + 1;
+        blocks++;
+        return true;
+    }
+
+    /**
+     * Claim a chunk as generated: returns the blocks parked for it (possibly
+     * empty) and drops any block parked for it from now on.
+     */
+    long[] claim(long chunkIndex) {
+        if (!generated.add(chunkIndex)) {
+            return EMPTY; // claimed before
+        }
+        int slot = find(chunkIndex);
+        if (slot < 0) {
+            return EMPTY;
+        }
+        long[] parked = Arrays.copyOf(buckets[slot], counts[slot]);
+        removeSlot(slot);
+        return parked;
+    }
+
+    /** Chunks with parked blocks. */
+    int pendingChunks() {
+        return entries;
+    }
+
+    int pendingBlocks() {
+        return blocks;
+    }
+
+    /** Chunks with parked blocks plus generated-chunk markers. */
+    int entries() {
+        return entries + generated.size();
+    }
+
+    long evictedChunks() {
+        return evictedChunks;
+    }
+
+    long evictedBlocks() {
+        return evictedBlocks;
+    }
+
+    long droppedBlocks() {
+        return droppedBlocks;
+    }
+
+    private int insert(long chunkIndex, long[] bucket) {
+        while (entries >= maxChunks) {
+            evictOldest();
+        }
+        if (orderSize == orderKeys.length) {
+            compactOrder(); // every live entry has one ring slot, so this frees at least one
+        }
+
+        int slot = hash(chunkIndex) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        long seq = nextSeq++;
+        used[slot] = true;
+        keys[slot] = chunkIndex;
+        buckets[slot] = bucket;
+        counts[slot] = 0;
+        seqs[slot] = seq;
+        entries++;
+
+        int tail = (orderHead + orderSize) % orderKeys.length;
+        orderKeys[tail] = chunkIndex;
+        orderSeqs[tail] = seq;
+        orderSize++;
+        return slot;
+    }
+
+    private void evictOldest() {
+        while (orderSize > 0) {
+            long key = orderKeys[orderHead];
+            long seq = orderSeqs[orderHead];
+            orderHead = (orderHead + 1) % orderKeys.length;
+            orderSize--;
+
+            int slot = find(key);
+            if (slot >= 0 && seqs[slot] == seq) {
+                evictedChunks++;
+                evictedBlocks += counts[slot];
+                removeSlot(slot);
+                return;
+            }
+            // stale ring slot, entry was claimed or replaced since
+        }
+    }
+
+    /**
+     * Drop stale slots from the insertion order ring, keeping the live ones in order.
+     */
+    private void compactOrder() {
+        int length = orderKeys.length;
+        int kept = 0;
+        for (int i = 0; i < orderSize; i++) {
+            int from = (orderHead + i) % length;
+            long key = orderKeys[from];
+            long seq = orderSeqs[from];
+            int slot = find(key);
+            if (slot >= 0 && seqs[slot] == seq) {
+                int to = (orderHead + kept) % length;
+                orderKeys[to] = key;
+                orderSeqs[to] = seq;
+                kept++;
+            }
+        }
+        orderSize = kept;
+    }
+
+    private int find(long chunkIndex) {
+        int slot = hash(chunkIndex) & mask;
+        while (used[slot]) {
+            if (keys[slot] == chunkIndex) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Remove an entry, shifting later entries of the probe run back into the gap.
+     */
+    private void removeSlot(int slot) {
+        blocks -= counts[slot];
+        entries--;
+
+        int gap = slot;
+        int i = (gap + 1) & mask;
+        while (used[i]) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                buckets[gap] = buckets[i];
+                counts[gap] = counts[i];
+                seqs[gap] = seqs[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        used[gap] = false;
+        buckets[gap] = null;
+        counts[gap] = 0;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Bounded set of chunk indexes; adding to a full set drops the oldest
+     * one. Chunks are only ever removed that way, so the insertion order
+     * ring never holds stale slots.
+     */
+    private static final class ChunkSet {
+        private final int mask;
+        private final long[] keys;
+        private final boolean[] used;
+        private final long[] order;
+        private int orderHead;
+        private int size;
+
+        ChunkSet(int maxChunks) {
+            int capacity = Integer.highestOneBit(Math.max(4, maxChunks) * 2 - 1) << 1;
+            this.mask = capacity - 1;
+            this.keys = new long[capacity];
+            this.used = new boolean[capacity];
+            this.order = new long[maxChunks];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(long chunkIndex) {
+            return find(chunkIndex) >= 0;
+        }
+
+        /**
+         * @return false if the chunk was already in the set
+         */
+        boolean add(long chunkIndex) {
+            if (find(chunkIndex) >= 0) {
+                return false;
+            }
+            if (size == order.length) {
+                remove(find(order[orderHead]));
+                orderHead = (orderHead + 1) % order.length;
+                size--;
+            }
+            int slot = hash(chunkIndex) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = chunkIndex;
+            order[(orderHead + size) % order.length] = chunkIndex;
+            size++;
+            return true;
+        }
+
+        private int find(long chunkIndex) {
+            int slot = hash(chunkIndex) & mask;
+            while (used[slot]) {
+                if (keys[slot] == chunkIndex) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void remove(int slot) {
+            int gap = slot;
+            int i = (gap + 1) & mask;
+            while (used[i]) {
+                int home = hash(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    gap = i;
+                }
+                i = (i + 1) & mask;
+            }
+            used[gap] = false;
+        }
+    }
+}
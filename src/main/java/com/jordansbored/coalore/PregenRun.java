@@ -0,0 +1,254 @@
+package com.jordansbored.coalore;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Progress of one {@code /coalore pregen} run: the square of chunks within
+ * {@code radius} of a center chunk, walked as a spiral from the center out.
+ *
+ * The job's steps request chunk loads on the world thread, at most
+ * {@code chunksPerSecond} and {@link #MAX_IN_FLIGHT} at a time; the server's
+ * chunk workers generate or read the chunks, the pre-load hook hands their
+ * planning to the planner pool, many chunks in parallel, and the job writes
+ * each plan on the world thread once its load is done. Loads finish out of
+ * order, so the run tracks which spiral steps have completed and checkpoints
+ * the first one that has not, which is where a resumed run starts. A chunk
+ * that failed to load stays incomplete, so the run keeps its checkpoint and
+ * a resumed run tries the chunk again.
+ */
+final class PregenRun {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    /** Chunk loads requested and not yet finished, per run. */
+    static final int MAX_IN_FLIGHT = 64;
+
+    final int centerX;
+    final int centerZ;
+    final int radius;
+    /** Spiral index this run (re)started at. */
+    final int firstIndex;
+    final int totalChunks;
+
+    private final int chunksPerSecond;
+    private final Path checkpointFile;
+    private final Set<Long> requested = ConcurrentHashMap.newKeySet();
+    // Plans the pre-load hook started for requested chunks, until their load is done
+    private final Map<Long, CompletableFuture<VeinPlan>> plans = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Completed steps, relative to firstIndex, and whether the run finished; guarded by this
+    private final BitSet completed = new BitSet();
+    private boolean done;
+
+    // Load permits, refilled at chunksPerSecond; world thread only
+    private double permits;
+    private long lastRefill = System.nanoTime();
+
+    volatile OreJob job;
+
+    private PregenRun(Path checkpointFile, int centerX, int centerZ, int radius, int firstIndex, int chunksPerSecond) {
+        this.checkpointFile = checkpointFile;
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.radius = radius;
+        this.firstIndex = firstIndex;
+        this.totalChunks = (radius * 2 + 1) * (radius * 2 + 1);
+        this.chunksPerSecond = chunksPerSecond;
+    }
+
+    static PregenRun start(Path checkpointFile, int centerX, int centerZ, int radius, int chunksPerSecond) {
+        return new PregenRun(checkpointFile, centerX, centerZ, radius, 0, chunksPerSecond);
+    }
+
+    /**
+     * The run saved in a checkpoint file, continuing where it stopped, or
+     * null if there is no usable checkpoint.
+     */
+    static PregenRun resume(Path checkpointFile, int chunksPerSecond) {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            int radius = Integer.parseInt(properties.getProperty("radius"));
+            int next = Integer.parseInt(properties.getProperty("next"));
+            return new PregenRun(checkpointFile, Integer.parseInt(properties.getProperty("centerX")),
+                Integer.parseInt(properties.getProperty("centerZ")), radius, next, chunksPerSecond);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.atWarning().withCause(e).log("Ignoring unreadable pregen checkpoint %s", checkpointFile);
+            return null;
+        }
+    }
+
+    /** Job steps: one per chunk from {@link #firstIndex} to the edge. */
+    int steps() {
+        return Math.max(0, totalChunks - firstIndex);
+    }
+
+    int chunkX(int step) {
+        return centerX + spiralX(firstIndex + step);
+    }
+
+    int chunkZ(int step) {
+        return centerZ + spiralZ(firstIndex + step);
+    }
+
+    /**
+     * Take a load permit if the rate cap and the in-flight limit allow one.
+     * World thread only.
+     */
+    boolean tryAcquire() {
+        long now = System.nanoTime();
+        permits = Math.min(chunksPerSecond, permits + (now - lastRefill) * chunksPerSecond / 1e9);
+        lastRefill = now;
+        if (permits < 1 || inFlight.get() >= MAX_IN_FLIGHT) {
+            return false;
+        }
+        permits--;
+        return true;
+    }
+
+    /** A load of this chunk was requested for the run. */
+    void requested(int chunkX, int chunkZ) {
+        requested.add(key(chunkX, chunkZ));
+        inFlight.incrementAndGet();
+    }
+
+    /** True while the run is loading the chunk; the pre-load hook gives it ore even without retrogen. */
+    boolean isRequested(int chunkX, int chunkZ) {
+        return !requested.isEmpty() && requested.contains(key(chunkX, chunkZ));
+    }
+
+    /** The pre-load hook is planning a requested chunk; safe to call from any thread. */
+    void planned(int chunkX, int chunkZ, CompletableFuture<VeinPlan> plan) {
+        plans.put(key(chunkX, chunkZ), plan);
+    }
+
+    /** The plan the pre-load hook started for a chunk, or null if it made none. */
+    CompletableFuture<VeinPlan> takePlan(int chunkX, int chunkZ) {
+        return plans.remove(key(chunkX, chunkZ));
+    }
+
+    /** The chunk of a load is done with (written or failed), freeing its in-flight slot; safe to call from any thread. */
+    void released(int chunkX, int chunkZ) {
+        requested.remove(key(chunkX, chunkZ));
+        inFlight.decrementAndGet();
+    }
+
+    synchronized void complete(int step) {
+        completed.set(step);
+    }
+
+    /** Spiral index a resumed run would start at. */
+    synchronized int checkpoint() {
+        return firstIndex + completed.nextClearBit(0);
+    }
+
+    /**
+     * Write the checkpoint through a temporary file; nothing once the run has completed.
+     */
+    synchronized void save() {
+        if (done) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("centerX", Integer.toString(centerX));
+        properties.setProperty("centerZ", Integer.toString(centerZ));
+        properties.setProperty("radius", Integer.toString(radius));
+        properties.setProperty("next", Integer.toString(checkpoint()));
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(checkpointFile.getParent());
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Coal Ore pregen progress; /coalore pregen resumes it");
+            }
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not write pregen checkpoint %s", checkpointFile);
+        }
+    }
+
+    /**
+     * The job went through every step: drop the checkpoint if every chunk
+     * completed, or save it at the first one that did not.
+     * @return false if some chunks are left for a resumed run
+     */
+    synchronized boolean finished() {
+        if (checkpoint() < totalChunks) {
+            save();
+            return false;
+        }
+        done = true;
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not delete pregen checkpoint %s", checkpointFile);
+        }
+        return true;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Ring of a spiral index: ring r holds indexes (2r-1)^2 to (2r+1)^2 - 1.
+     */
+    private static int ring(int index) {
+        int ring = (int) Math.ceil((Math.sqrt(index + 1.0) - 1) / 2);
+        while ((2L * ring + 1) * (2L * ring + 1) <= index) {
+            ring++;
+        }
+        while (ring > 0 && (2L * ring - 1) * (2L * ring - 1) > index) {
+            ring--;
+        }
+        return ring;
+    }
+
+    /**
+     * Offsets of a spiral index from the center. Each ring starts just above
+     * its bottom-right corner and runs counter-clockwise in four legs of 2r.
+     */
+    static int spiralX(int index) {
+        return spiral(index, true);
+    }
+
+    static int spiralZ(int index) {
+        return spiral(index, false);
+    }
+
+    private static int spiral(int index, boolean x) {
+        int ring = ring(index);
+        if (ring == 0) {
+            return 0;
+        }
+        int side = ring * 2;
+        int t = index - (side - 1) * (side - 1);
+        int leg = t / side;
+        int pos = t % side;
+        if (leg == 0) {
+            return x ? ring : -ring + 1 + pos;
+        } else if (leg == 1) {
+            return x ? ring - 1 - pos : ring;
+        } else if (leg == 2) {
+            return x ? -ring : ring - 1 - pos;
+        }
+        return x ? -ring + 1 + pos : -ring;
+    }
+}
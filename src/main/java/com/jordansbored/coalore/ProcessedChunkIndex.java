@@ -0,0 +1,124 @@
+package com.jordansbored.coalore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Persistent record of which chunks of a world already got their coal, one
+ * bit per chunk. The world is split into regions of 1024x1024 chunks, each
+ * stored as a 128 KiB bitmap file that is memory-mapped on first use, so a
+ * lookup is a couple of loads from off-heap memory and the heap does not
+ * grow with the number of chunks.
+ *
+ * Bits are set under the index's monitor, from the world thread or from a
+ * chunk pre-load hook; reads take no lock, and a stale read only means the
+ * chunk is checked again before applying.
+ */
+final class ProcessedChunkIndex {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private static final int REGION_SHIFT = 10;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    static final int REGION_BYTES = (1 << REGION_SHIFT) * (1 << REGION_SHIFT) / 8;
+
+    private final Path directory;
+    private final Map<Long, Region> regions = new ConcurrentHashMap<>();
+
+    // Last region used; chunk loads are strongly local so this hits almost always
+    private volatile Region lastRegion;
+
+    ProcessedChunkIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    boolean isProcessed(int chunkX, int chunkZ) {
+        Region region = region(chunkX, chunkZ, false);
+        if (region == null) {
+            return false;
+        }
+        int bit = bitIndex(chunkX, chunkZ);
+        return (region.bits.get(bit >>> 3) & (1 << (bit & 7))) != 0;
+    }
+
+    /**
+     * Record that a chunk has its coal.
+     */
+    synchronized void markProcessed(int chunkX, int chunkZ) {
+        Region region = region(chunkX, chunkZ, true);
+        if (region == null) {
+            return; // could not open the region file; already logged
+        }
+        int bit = bitIndex(chunkX, chunkZ);
+        int index = bit >>> 3;
+        region.bits.put(index, (byte) (region.bits.get(index) | (1 << (bit & 7))));
+    }
+
+    /**
+     * Write dirty pages of every mapped region to disk.
+     */
+    void force() {
+        for (Region region : regions.values()) {
+            region.bits.force();
+        }
+    }
+
+    private static int bitIndex(int chunkX, int chunkZ) {
+        return ((chunkX & REGION_MASK) << REGION_SHIFT) | (chunkZ & REGION_MASK);
+    }
+
+    private Region region(int chunkX, int chunkZ, boolean create) {
+        long key = ((long) (chunkX >> REGION_SHIFT) << 32) | ((chunkZ >> REGION_SHIFT) & 0xFFFFFFFFL);
+        Region region = lastRegion;
+        if (region != null && region.key == key) {
+            return region;
+        }
+
+        region = regions.get(key);
+        if (region == null) {
+            Path file = directory.resolve("r." + (chunkX >> REGION_SHIFT) + "." + (chunkZ >> REGION_SHIFT) + ".bin");
+            if (!create && !Files.exists(file)) {
+                return null; // nothing in this region has been processed
+            }
+            try {
+                region = regions.computeIfAbsent(key, k -> map(k, file));
+            } catch (UncheckedIOException e) {
+                LOGGER.atWarning().withCause(e.getCause()).log("Could not open processed-chunk file %s", file);
+                return null;
+            }
+        }
+        lastRegion = region;
+        return region;
+    }
+
+    private Region map(long key, Path file) {
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // Mapping past the end grows the file; the mapping outlives the channel
+                return new Region(key, channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_BYTES));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Region {
+        final long key;
+        final MappedByteBuffer bits;
+
+        Region(long key, MappedByteBuffer bits) {
+            this.key = key;
+            this.bits = bits;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.jordansbored.coalore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deferred plans of one world, nearest to a player first. Planner threads
+ * add plans from anywhere; the world thread refreshes the order from the
+ * current player positions, re-sorting everything at most twice a second,
+ * and polls the nearest plan. With no players online plans come out in
+ * arrival order.
+ *
+ * Plans whose chunk unloaded before they were applied are parked by chunk
+ * instead of dropped, and {@link #resume} puts one back in the queue when
+ * its chunk loads again. At most {@code maxParked} plans are parked; the
+ * oldest is dropped beyond that. {@link #contains} tells whether a chunk has
+ * a plan queued or parked, and {@link #takeParked} and {@link #takeQueued}
+ * hand one to a caller that applies it itself (pregen).
+ */
+final class ProximityPlanQueue {
+
+    private static final long REPRIORITIZE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Whether a chunk is loaded, asked during a refresh on the world thread.
+     */
+    interface ChunkLoaded {
+        boolean isLoaded(int chunkX, int chunkZ);
+    }
+
+    /**
+     * Applies a polled plan on the world thread.
+     */
+    interface Applier {
+        /**
+         * @return false if the chunk is no longer available and the plan should be parked
+         */
+        boolean apply(VeinPlan plan);
+    }
+
+    private final CoalOreMetrics metrics;
+    private final Queue<VeinPlan> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    // Queued (not parked) and announced plans per chunk; a retrogen chunk can be queued twice
+    private final Map<Long, Integer> queued = new ConcurrentHashMap<>();
+
+    // World thread only
+    private PriorityQueue<Entry> ready = new PriorityQueue<>();
+    private long sequence;
+    private long lastReprioritized;
+    private boolean everReprioritized;
+
+    // Guarded by itself: parked from the world thread, resumed from chunk loading
+    private final Map<Long, VeinPlan> parked;
+    private final AtomicInteger parkedCount = new AtomicInteger();
+
+    ProximityPlanQueue(CoalOreMetrics metrics, int maxParked) {
+        this.metrics = metrics;
+        this.parked = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, VeinPlan> eldest) {
+                if (size() <= maxParked) {
+                    return false;
+                }
+                metrics.chunksDropped.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Queue a plan; safe to call from any thread.
+     * @return plans now queued
+     */
+    int add(VeinPlan plan) {
+        expect(plan.chunkX, plan.chunkZ);
+        return addExpected(plan);
+    }
+
+    /**
+     * Count a plan that is still being made as queued for its chunk, so
+     * {@link #contains} already sees it; safe to call from any thread.
+     * Follow up with {@link #addExpected} or {@link #cancelExpected}.
+     */
+    void expect(int chunkX, int chunkZ) {
+        queued.merge(key(chunkX, chunkZ), 1, Integer::sum);
+    }
+
+    /**
+     * Queue a plan announced with {@link #expect}; safe to call from any thread.
+     * @return plans now queued
+     */
+    int addExpected(VeinPlan plan) {
+        incoming.add(plan);
+        return size.incrementAndGet();
+    }
+
+    /**
+     * An announced plan will not come after all; safe to call from any thread.
+     */
+    void cancelExpected(int chunkX, int chunkZ) {
+        queued.computeIfPresent(key(chunkX, chunkZ), (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /** Plans queued, not counting parked ones. */
+    int size() {
+        return size.get();
+    }
+
+    int parked() {
+        return parkedCount.get();
+    }
+
+    /**
+     * Take in newly added plans and, when due, re-sort the queue by current
+     * player distance and park plans whose chunk has unloaded. World thread only.
+     * @param playerChunkX chunk X of each player
+     * @param playerChunkZ chunk Z of each player
+     * @param players number of valid entries in the player arrays
+     */
+    void refresh(int[] playerChunkX, int[] playerChunkZ, int players, ChunkLoaded loaded) {
+        long now = System.nanoTime();
+        if (!everReprioritized || now - lastReprioritized >= REPRIORITIZE_NANOS) {
+            everReprioritized = true;
+            lastReprioritized = now;
+            List<Entry> kept = new ArrayList<>(ready.size());
+            for (Entry entry : ready) {
+                if (!loaded.isLoaded(entry.plan.chunkX, entry.plan.chunkZ)) {
+                    size.decrementAndGet();
+                    dequeued(entry.plan);
+                    park(entry.plan);
+                    continue;
+                }
+                entry.distance = distanceSq(entry.plan, playerChunkX, playerChunkZ, players);
+                kept.add(entry);
+            }
+            ready = new PriorityQueue<>(kept);
+        }
+        VeinPlan plan;
+        while ((plan = incoming.poll()) != null) {
+            ready.add(new Entry(plan, distanceSq(plan, playerChunkX, playerChunkZ, players), sequence++));
+        }
+    }
+
+    /**
+     * One tick's worth of plans: refresh the order, then apply at least one
+     * plan (so a tiny budget still makes progress) and as many more as fit
+     * before the deadline, parking those whose chunk is gone. World thread only.
+     * @see #refresh
+     */
+    void drain(int[] playerChunkX, int[] playerChunkZ, int players, ChunkLoaded loaded, Applier applier, long deadline) {
+        if (size() > 0) {
+            refresh(playerChunkX, playerChunkZ, players, loaded);
+        }
+        boolean applied = false;
+        VeinPlan plan;
+        while ((!applied || System.nanoTime() < deadline) && (plan = poll()) != null) {
+            if (!applier.apply(plan)) {
+                park(plan);
+            }
+            applied = true;
+        }
+    }
+
+    /**
+     * The plan nearest to a player as of the last refresh, or null. World thread only.
+     */
+    VeinPlan poll() {
+        Entry entry = ready.poll();
+        if (entry == null) {
+            return null;
+        }
+        size.decrementAndGet();
+        dequeued(entry.plan);
+        return entry.plan;
+    }
+
+    /**
+     * Whether the chunk has a plan queued or parked; safe to call from any thread.
+     */
+    boolean contains(int chunkX, int chunkZ) {
+        long key = key(chunkX, chunkZ);
+        if (queued.containsKey(key)) {
+            return true;
+        }
+        if (parkedCount.get() == 0) {
+            return false;
+        }
+        synchronized (parked) {
+            return parked.containsKey(key);
+        }
+    }
+
+    private void dequeued(VeinPlan plan) {
+        cancelExpected(plan.chunkX, plan.chunkZ);
+    }
+
+    /**
+     * Keep a plan whose chunk is not loaded until the chunk comes back.
+     */
+    void park(VeinPlan plan) {
+        synchronized (parked) {
+            parked.put(key(plan.chunkX, plan.chunkZ), plan);
+            parkedCount.set(parked.size());
+        }
+        metrics.chunksParked.increment();
+    }
+
+    /**
+     * Re-queue the parked plan of a chunk that is loading again; safe to
+     * call from any thread.
+     * @return true if the chunk had a parked plan
+     */
+    boolean resume(int chunkX, int chunkZ) {
+        VeinPlan plan = takeParked(chunkX, chunkZ);
+        if (plan == null) {
+            return false;
+        }
+        add(plan);
+        return true;
+    }
+
+    /**
+     * Take the parked plan of a chunk that is loading again; safe to call
+     * from any thread.
+     * @return the plan, or null if none is parked
+     */
+    VeinPlan takeParked(int chunkX, int chunkZ) {
+        if (parkedCount.get() == 0) {
+            return null;
+        }
+        VeinPlan plan;
+        synchronized (parked) {
+            plan = parked.remove(key(chunkX, chunkZ));
+            parkedCount.set(parked.size());
+        }
+        if (plan != null) {
+            metrics.chunksResumed.increment();
+        }
+        return plan;
+    }
+
+    /**
+     * Take a chunk's plan out of the queue. A linear scan, meant for the odd
+     * chunk rather than every tick. World thread only.
+     * @return the plan, or null if none is queued (one still being made is not)
+     */
+    VeinPlan takeQueued(int chunkX, int chunkZ) {
+        if (!queued.containsKey(key(chunkX, chunkZ))) {
+            return null;
+        }
+        for (Iterator<VeinPlan> it = incoming.iterator(); it.hasNext(); ) {
+            VeinPlan plan = it.next();
+            if (plan.chunkX == chunkX && plan.chunkZ == chunkZ) {
+                it.remove();
+                size.decrementAndGet();
+                dequeued(plan);
+                return plan;
+            }
+        }
+        for (Iterator<Entry> it = ready.iterator(); it.hasNext(); ) {
+            VeinPlan plan = it.next().plan;
+            if (plan.chunkX == chunkX && plan.chunkZ == chunkZ) {
+                it.remove();
+                size.decrementAndGet();
+                dequeued(plan);
+                return plan;
+            }
+        }
+        return null;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Squared chunk distance to the nearest player; no players sorts last.
+     */
+    private static long distanceSq(VeinPlan plan, int[] playerChunkX, int[] playerChunkZ, int players) {
+        long nearest = Long.MAX_VALUE;
+        for (int i = 0; i < players; i++) {
+            long dx = plan.chunkX - playerChunkX[i];
+            long dz = plan.chunkZ - playerChunkZ[i];
+            nearest = Math.min(nearest, dx * dx + dz * dz);
+        }
+        return nearest;
+    }
+
+    /**
+     * A queued plan with its sort key; ties go to the plan queued first.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final VeinPlan plan;
+        final long sequence;
+        long distance;
+
+        Entry(VeinPlan plan, long distance, long sequence) {
+            this.plan = plan;
+            this.distance = distance;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDistance = Long.compare(distance, other.distance);
+            return byDistance != 0 ? byDistance : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.jordansbored.coalore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Totals of a scan or purge job: ore blocks per variant and per 16-block Y
+ * band over the chunks scanned. Only updated on the world thread.
+ */
+final class ScanResult {
+
+    static final int BAND_SHIFT = 4;
+    private static final int BANDS = (SectionBatchWriter.SECTION_COUNT * 32) >> BAND_SHIFT;
+
+    private final OreVariantTable table;
+    private final long[] perVariant;
+    private final long[] perBand = new long[BANDS];
+    private int chunks;
+
+    ScanResult(OreVariantTable table) {
+        this.table = table;
+        this.perVariant = new long[table.variantCount()];
+    }
+
+    void count(int variant, int y) {
+        perVariant[variant]++;
+        perBand[Math.min(BANDS - 1, y >> BAND_SHIFT)]++;
+    }
+
+    void chunkScanned() {
+        chunks++;
+    }
+
+    /**
+     * Report lines: one per variant found and one per Y band holding ore, with
+     * its density in blocks of ore per thousand blocks of the band.
+     */
+    List<String> formatLines() {
+        List<String> lines = new ArrayList<>();
+        long total = 0;
+        for (long count : perVariant) {
+            total += count;
+        }
+        lines.add("Scanned " + chunks + " chunks: " + total + " coal ore blocks");
+        for (int v = 0; v < perVariant.length; v++) {
+            if (perVariant[v] > 0) {
+                lines.add("  " + table.variantName(v) + ": " + perVariant[v]);
+            }
+        }
+        long bandVolume = (long) chunks * 32 * 32 * (1 << BAND_SHIFT);
+        for (int band = 0; band < BANDS; band++) {
+            if (perBand[band] > 0) {
+                int minY = band << BAND_SHIFT;
+                lines.add(String.format(Locale.ROOT, "  Y %d-%d: %d (%.2f per 1000 blocks)", minY, minY + (1 << BAND_SHIFT) - 1,
+                    perBand[band], perBand[band] * 1000.0 / bandVolume));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,156 @@
+package com.jordansbored.coalore;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Collects ore placements for one chunk and writes them section by section.
+ * Each touched section is fetched once, all its replacements are applied in
+ * a single pass, and it gets one invalidation; the chunk is marked for saving
+ * once per flush instead of once per block.
+ *
+ * Ore replaces solid rock with another solid block, so lighting does not
+ * change and the per-block setBlock side effects are not needed.
+ *
+ * Instances are not thread-safe; keep one per thread.
+ */
+final class SectionBatchWriter {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    static final int SECTION_SIZE = 32;
+    static final int SECTION_COUNT = 10; // 320 blocks of world height
+
+    private final LongAdder failures;
+
+    private long[] pending = new long[256];
+    private long[] sorted = new long[256];
+    private int count;
+    private final int[] sectionStart = new int[SECTION_COUNT + 1];
+    private final int[] cursor = new int[SECTION_COUNT];
+
+    /**
+     * @param failures shared counter incremented for every section write that throws
+     */
+    SectionBatchWriter(LongAdder failures) {
+        this.failures = failures;
+    }
+
+    /**
+     * Queue a placement; the position must be inside the chunk that is flushed next.
+     */
+    void add(long packedPos) {
+        if (count == pending.length) {
+            pending = Arrays.copyOf(pending, count * 2);
+        }
+        pending[count++] = packedPos;
+    }
+
+    int size() {
+        return count;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    /**
+     * Apply all queued placements to the chunk and clear the queue.
+     * @return the number of blocks actually replaced with ore
+     */
+    int flush(OreChunk chunk, OreVariantTable table) {
+        return flush(chunk, table, null);
+    }
+
+    /**
+     * Like {@link #flush(OreChunk, OreVariantTable)}, recording every
+     * replaced block and its original id in the journal's current chunk.
+     */
+    int flush(OreChunk chunk, OreVariantTable table, ChangeJournal journal) {
+        if (count == 0) {
+            return 0;
+        }
+
+        groupBySection();
+        int placed = 0;
+
+        for (int sy = 0; sy < SECTION_COUNT; sy++) {
+            int from = sectionStart[sy];
+            int to = sectionStart[sy + 1];
+            if (from == to) {
+                continue;
+            }
+
+            try {
+                OreSection section = chunk.section(sy);
+                if (section == null) {
+                    failures.increment();
+                    continue;
+                }
+                int sectionPlaced = 0;
+                for (int i = from; i < to; i++) {
+                    long block = sorted[i];
+                    int x = PackedBlockPos.x(block) & (SECTION_SIZE - 1);
+                    int y = PackedBlockPos.y(block) & (SECTION_SIZE - 1);
+                    int z = PackedBlockPos.z(block) & (SECTION_SIZE - 1);
+                    int original = section.get(x, y, z);
+                    int oreId = table.oreFor(original);
+                    if (oreId != OreVariantTable.NOT_REPLACEABLE && section.set(x, y, z, oreId)) {
+                        sectionPlaced++;
+                        if (journal != null) {
+                            journal.record((PackedBlockPos.y(block) << 10) | (z << 5) | x, original);
+                        }
+                    }
+                }
+                if (sectionPlaced > 0) {
+                    section.invalidate();
+                    placed += sectionPlaced;
+                }
+            } catch (Exception e) {
+                if (failures.sum() == 0) {
+                    LOGGER.atWarning().withCause(e).log("Section write failed in chunk [%d, %d] section %d (further failures are only counted)",
+                        chunk.getX(), chunk.getZ(), sy);
+                }
+                failures.increment();
+            }
+        }
+
+        if (placed > 0) {
+            chunk.markNeedsSaving();
+        }
+        count = 0;
+        return placed;
+    }
+
+    /**
+     * Counting sort of the queued placements by section; positions outside the
+     * world height are dropped.
+     */
+    private void groupBySection() {
+        if (sorted.length < count) {
+            sorted = new long[pending.length];
+        }
+
+        Arrays.fill(sectionStart, 0);
+        for (int i = 0; i < count; i++) {
+            int sy = PackedBlockPos.y(pending[i]) >> 5;
+            if (sy >= 0 && sy < SECTION_COUNT) {
+                sectionStart[sy + 1]++;
+            }
+        }
+        for (int sy = 0; sy < SECTION_COUNT; sy++) {
+            sectionStart[sy + 1] += sectionStart[sy];
+        }
+
+        System.arraycopy(sectionStart, 0, cursor, 0, SECTION_COUNT);
+        for (int i = 0; i < count; i++) {
+            long block = pending[i];
+            int sy = PackedBlockPos.y(block) >> 5;
+            if (sy >= 0 && sy < SECTION_COUNT) {
+                sorted[cursor[sy]++] = block;
+            }
+        }
+    }
+}
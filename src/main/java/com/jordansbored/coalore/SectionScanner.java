@@ -0,0 +1,139 @@
+package com.jordansbored.coalore;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Bulk scanner for coal ore already in the world. Each section is read into
+ * an int array once, a range kernel marks every block whose id falls between
+ * the table's smallest and largest ore id (SIMD compares when the Vector API
+ * is available), and only those few candidates are checked exactly against
+ * the variant table. Purging turns the found ore back into its host rock in
+ * the same pass.
+ *
+ * Thread-safe; buffers are kept per thread.
+ */
+final class SectionScanner {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    // Vector API kernel, compiled in the vector source set
+    private static final String VECTOR_KERNEL = "com.jordansbored.coalore.VectorRangeKernel";
+
+    static final int SECTION_VOLUME = 32 * 32 * 32;
+
+    /**
+     * Marks blocks whose id is within [minId, maxId].
+     */
+    interface RangeKernel {
+        /**
+         * @param bits one bit per block, cleared by the caller
+         * @return the number of marked blocks
+         */
+        int mark(int[] blocks, int minId, int maxId, long[] bits);
+    }
+
+    private final RangeKernel kernel;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    SectionScanner(RangeKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Scanner using the vector kernel if the Vector API is available.
+     */
+    static SectionScanner create() {
+        if (VectorSupport.isModuleLoaded()) {
+            try {
+                return new SectionScanner(VectorSupport.newKernel(VECTOR_KERNEL, RangeKernel.class));
+            } catch (InvocationTargetException e) {
+                LOGGER.atWarning().withCause(e.getCause()).log("Vector API unavailable, using scalar section scans");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LOGGER.atWarning().withCause(e).log("Vector API unavailable, using scalar section scans");
+            }
+        }
+        return new SectionScanner(SectionScanner::scalarMark);
+    }
+
+    static int scalarMark(int[] blocks, int minId, int maxId, long[] bits) {
+        int marked = 0;
+        for (int i = 0; i < SECTION_VOLUME; i++) {
+            int id = blocks[i];
+            if (id >= minId && id <= maxId) {
+                bits[i >>> 6] |= 1L << i;
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    boolean isVectorized() {
+        return kernel.getClass().getName().equals(VECTOR_KERNEL);
+    }
+
+    /**
+     * Count (and with {@code purge}, remove) the coal ore in a chunk.
+     * @return the number of ore blocks found
+     */
+    int scanChunk(OreChunk chunk, OreVariantTable table, ScanResult result, boolean purge) {
+        if (table.maxOreId() < 0) {
+            return 0;
+        }
+        Buffers b = buffers.get();
+        int found = 0;
+        boolean changed = false;
+
+        for (int sy = 0; sy < SectionBatchWriter.SECTION_COUNT; sy++) {
+            OreSection section = chunk.section(sy);
+            if (section == null || section.isAir()) {
+                continue;
+            }
+            section.read(b.blocks);
+            Arrays.fill(b.bits, 0L);
+            if (kernel.mark(b.blocks, table.minOreId(), table.maxOreId(), b.bits) == 0) {
+                continue;
+            }
+
+            int sectionFound = 0;
+            for (int word = 0; word < b.bits.length; word++) {
+                long bits = b.bits[word];
+                while (bits != 0) {
+                    int i = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int variant = table.variantOf(b.blocks[i]);
+                    if (variant == OreVariantTable.NOT_REPLACEABLE) {
+                        continue; // inside the id range but not one of ours
+                    }
+                    int y = (sy << 5) | (i >>> 10);
+                    result.count(variant, y);
+                    sectionFound++;
+                    if (purge) {
+                        section.set(i & 31, i >>> 10, (i >>> 5) & 31, table.hostOf(variant));
+                    }
+                }
+            }
+            if (purge && sectionFound > 0) {
+                section.invalidate();
+                changed = true;
+            }
+            found += sectionFound;
+        }
+
+        result.chunkScanned();
+        if (changed) {
+            chunk.markNeedsSaving();
+        }
+        return found;
+    }
+
+    /**
+     * Per-thread section copy and candidate bits.
+     */
+    private static final class Buffers {
+        final int[] blocks = new int[SECTION_VOLUME];
+        final long[] bits = new long[SECTION_VOLUME / 64];
+    }
+}
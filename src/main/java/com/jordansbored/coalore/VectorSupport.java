@@ -0,0 +1,32 @@
+package com.jordansbored.coalore;
+
+/**
+ * Whether the JDK Vector API can be used. It lives in the incubator module
+ * jdk.incubator.vector, which is only resolved when the server JVM is
+ * started with {@code --add-modules jdk.incubator.vector}; classes that use
+ * it must only be loaded after this check passes.
+ *
+ * Those classes are compiled in the separate {@code vector} source set (see
+ * build.gradle), so the plugin refers to them by name only.
+ */
+final class VectorSupport {
+
+    private static final boolean MODULE_LOADED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorSupport() {
+    }
+
+    static boolean isModuleLoaded() {
+        return MODULE_LOADED;
+    }
+
+    /**
+     * New instance of a kernel from the vector source set; only call once
+     * {@link #isModuleLoaded()} is true.
+     * @throws ReflectiveOperationException if the class is missing or its
+     *         constructor refused (see the cause of an InvocationTargetException)
+     */
+    static <T> T newKernel(String className, Class<T> type) throws ReflectiveOperationException {
+        return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+    }
+}
@@ -0,0 +1,462 @@
+package com.jordansbored.coalore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Persistent spatial index of the veins generated in one world: center,
+ * bounds, ore variant and block count per vein, so "where is coal near
+ * here" is answered without reading any chunk.
+ *
+ * The world is split into regions of 32x32 chunks, each stored as one small
+ * file under the world's index directory. Inside a region every chunk is a
+ * grid bucket (a linked list through the entry arrays), so a query only
+ * walks the chunks it overlaps. Regions are kept in an LRU cache.
+ *
+ * No file is touched under the index's monitor or on the calling thread:
+ * reads and writes run in order on the index's I/O executor, which must be
+ * single-threaded so a region is never read back before its last write.
+ * Recording into a region that is not in memory queues the change and
+ * starts its read; the change is applied once the region is in. Evicted and
+ * flushed regions are copied under the monitor and written from the copy.
+ * Queries read missing regions the same way, and cache only regions that
+ * exist on disk, so a query over empty land evicts nothing.
+ */
+final class VeinIndex {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    private static final int CHUNKS_PER_REGION = 1 << (REGION_SHIFT * 2);
+    private static final int FILE_MAGIC = 0x434F5649; // "COVI"
+    private static final int FILE_VERSION = 1;
+
+    private static final long[] NO_LONGS = new long[0];
+    private static final int[] NO_INTS = new int[0];
+
+    /** Variant stored when the vein's center is not a coal ore (e.g. a seam centroid in air). */
+    static final int UNKNOWN_VARIANT = 0xFF;
+
+    private final Path directory;
+    private final Executor io;
+
+    // All three guarded by this
+    private final Map<Long, Region> regions;
+    private final Map<Long, CompletableFuture<Region>> loading = new HashMap<>();
+    private final Map<Long, List<ChunkVeins>> deferred = new HashMap<>();
+
+    /**
+     * @param directory where this world's region files live
+     * @param maxCachedRegions regions kept in memory before the least recently used is written out and dropped
+     * @param io single-threaded executor for region reads and writes
+     */
+    VeinIndex(Path directory, int maxCachedRegions, Executor io) {
+        this.directory = directory;
+        this.io = io;
+        this.regions = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Region> eldest) {
+                if (size() <= maxCachedRegions) {
+                    return false;
+                }
+                Region region = eldest.getValue();
+                if (region.dirty) {
+                    write(List.of(region.copy()));
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Record the veins of an applied plan, replacing whatever the index held
+     * for that chunk. The variant is read from the block at each vein's center.
+     */
+    void record(OreChunk chunk, VeinPlan plan, OreVariantTable table) {
+        int count = plan.summaryCount();
+        long[] centers = new long[count];
+        long[] meta = new long[count];
+        int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+            long center = plan.summaryCenter(i);
+            centers[i] = center;
+            meta[i] = pack(center, plan.summaryMin(i), plan.summaryMax(i), variantAt(chunk, center, table));
+            blocks[i] = plan.summaryBlocks(i);
+        }
+        update(plan.chunkX, plan.chunkZ, new ChunkVeins(bucket(plan.chunkX, plan.chunkZ), centers, meta, blocks));
+    }
+
+    /**
+     * Forget the veins of a chunk, e.g. after its ore was purged.
+     */
+    void clearChunk(int chunkX, int chunkZ) {
+        update(chunkX, chunkZ, new ChunkVeins(bucket(chunkX, chunkZ), NO_LONGS, NO_LONGS, NO_INTS));
+    }
+
+    /**
+     * Replace a chunk's veins now if its region is in memory, else once it
+     * has been read.
+     */
+    private synchronized void update(int chunkX, int chunkZ, ChunkVeins veins) {
+        long key = key(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        Region region = regions.get(key);
+        if (region != null) {
+            veins.applyTo(region);
+            return;
+        }
+        deferred.computeIfAbsent(key, k -> new ArrayList<>()).add(veins);
+        load(key);
+    }
+
+    /**
+     * Veins whose center lies within {@code radius} blocks of a position,
+     * nearest first. Completes at once when the regions involved are in
+     * memory, otherwise once the I/O executor has read them.
+     * @param limit maximum number of veins returned
+     */
+    CompletableFuture<List<OreVein>> near(int x, int y, int z, int radius, int limit, OreVariantTable table) {
+        int minChunkX = (x - radius) >> 5;
+        int maxChunkX = (x + radius) >> 5;
+        int minChunkZ = (z - radius) >> 5;
+        int maxChunkZ = (z + radius) >> 5;
+
+        List<CompletableFuture<Region>> parts = new ArrayList<>();
+        synchronized (this) {
+            for (int regionX = minChunkX >> REGION_SHIFT; regionX <= maxChunkX >> REGION_SHIFT; regionX++) {
+                for (int regionZ = minChunkZ >> REGION_SHIFT; regionZ <= maxChunkZ >> REGION_SHIFT; regionZ++) {
+                    long key = key(regionX, regionZ);
+                    Region region = regions.get(key);
+                    parts.add(region != null ? CompletableFuture.completedFuture(region) : load(key));
+                }
+            }
+        }
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<OreVein> found = new ArrayList<>();
+            synchronized (this) {
+                for (CompletableFuture<Region> part : parts) {
+                    collect(part.join(), x, y, z, radius, minChunkX, maxChunkX, minChunkZ, maxChunkZ, table, found);
+                }
+            }
+            found.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+            return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+        });
+    }
+
+    private static void collect(Region region, int x, int y, int z, int radius, int minChunkX, int maxChunkX,
+                                int minChunkZ, int maxChunkZ, OreVariantTable table, List<OreVein> found) {
+        if (region.live == 0) {
+            return;
+        }
+        long radiusSq = (long) radius * radius;
+        int regionX = (int) (region.key >> 32);
+        int regionZ = (int) region.key;
+        int fromX = Math.max(minChunkX, regionX << REGION_SHIFT);
+        int toX = Math.min(maxChunkX, (regionX << REGION_SHIFT) + REGION_MASK);
+        int fromZ = Math.max(minChunkZ, regionZ << REGION_SHIFT);
+        int toZ = Math.min(maxChunkZ, (regionZ << REGION_SHIFT) + REGION_MASK);
+        for (int chunkX = fromX; chunkX <= toX; chunkX++) {
+            for (int chunkZ = fromZ; chunkZ <= toZ; chunkZ++) {
+                for (int e = region.heads[bucket(chunkX, chunkZ)]; e >= 0; e = region.next[e]) {
+                    long center = region.centers[e];
+                    long dx = PackedBlockPos.x(center) - x;
+                    long dy = PackedBlockPos.y(center) - y;
+                    long dz = PackedBlockPos.z(center) - z;
+                    long distanceSq = dx * dx + dy * dy + dz * dz;
+                    if (distanceSq <= radiusSq) {
+                        found.add(unpack(center, region.meta[e], region.blocks[e], Math.sqrt(distanceSq), table));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue every dirty region for writing. The regions are copied under the
+     * monitor and written on the I/O executor.
+     * @return completes once the copies are on disk
+     */
+    synchronized CompletableFuture<Void> flush() {
+        List<Region> copies = new ArrayList<>();
+        for (Region region : regions.values()) {
+            if (region.dirty) {
+                copies.add(region.copy());
+                region.dirty = false;
+            }
+        }
+        return copies.isEmpty() ? CompletableFuture.completedFuture(null) : write(copies);
+    }
+
+    private static int bucket(int chunkX, int chunkZ) {
+        return ((chunkX & REGION_MASK) << REGION_SHIFT) | (chunkZ & REGION_MASK);
+    }
+
+    private static int variantAt(OreChunk chunk, long pos, OreVariantTable table) {
+        int y = PackedBlockPos.y(pos);
+        OreSection section = chunk.section(y >> 5);
+        if (section == null) {
+            return UNKNOWN_VARIANT;
+        }
+        int variant = table.variantOf(section.get(PackedBlockPos.x(pos) & 31, y & 31, PackedBlockPos.z(pos) & 31));
+        return variant < 0 || variant >= UNKNOWN_VARIANT ? UNKNOWN_VARIANT : variant;
+    }
+
+    /**
+     * Bounds as distances from the center (one byte each, clamped) and the
+     * variant, in one long: -x, +x, -y, +y, -z, +z, variant from the low byte up.
+     */
+    private static long pack(long center, long min, long max, int variant) {
+        int cx = PackedBlockPos.x(center);
+        int cy = PackedBlockPos.y(center);
+        int cz = PackedBlockPos.z(center);
+        return extent(cx - PackedBlockPos.x(min))
+            | extent(PackedBlockPos.x(max) - cx) << 8
+            | extent(cy - PackedBlockPos.y(min)) << 16
+            | extent(PackedBlockPos.y(max) - cy) << 24
+            | extent(cz - PackedBlockPos.z(min)) << 32
+            | extent(PackedBlockPos.z(max) - cz) << 40
+            | (long) (variant & 0xFF) << 48;
+    }
+
+    private static long extent(int distance) {
+        return Math.max(0, Math.min(255, distance));
+    }
+
+    private static OreVein unpack(long center, long meta, int blocks, double distance, OreVariantTable table) {
+        int cx = PackedBlockPos.x(center);
+        int cy = PackedBlockPos.y(center);
+        int cz = PackedBlockPos.z(center);
+        int variant = (int) (meta >>> 48) & 0xFF;
+        String name = variant == UNKNOWN_VARIANT || table == null || variant >= table.variantCount()
+            ? "mixed" : table.variantName(variant);
+        return new OreVein(cx, cy, cz,
+            cx - (int) (meta & 0xFF), cy - (int) (meta >>> 16 & 0xFF), cz - (int) (meta >>> 32 & 0xFF),
+            cx + (int) (meta >>> 8 & 0xFF), cy + (int) (meta >>> 24 & 0xFF), cz + (int) (meta >>> 40 & 0xFF),
+            name, blocks, distance);
+    }
+
+    private static long key(int regionX, int regionZ) {
+        return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Start reading a region that is not in memory, or join the read already
+     * running. Called under the monitor; the read is queued behind any write
+     * of the same region.
+     */
+    private CompletableFuture<Region> load(long key) {
+        CompletableFuture<Region> future = loading.get(key);
+        if (future == null) {
+            try {
+                future = CompletableFuture.supplyAsync(() -> loaded(key, read(key)), io);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: nothing will be written any more
+                deferred.remove(key);
+                return CompletableFuture.completedFuture(new Region(key));
+            }
+            loading.put(key, future);
+        }
+        return future;
+    }
+
+    /**
+     * Apply the changes queued while a region was being read, and cache it
+     * unless it is empty and unchanged.
+     */
+    private synchronized Region loaded(long key, Region region) {
+        loading.remove(key);
+        List<ChunkVeins> changes = deferred.remove(key);
+        if (changes != null) {
+            changes.forEach(change -> change.applyTo(region));
+        }
+        if (region.live > 0 || region.dirty) {
+            regions.put(key, region);
+        }
+        return region;
+    }
+
+    /**
+     * Write region copies on the I/O executor, or right here if it has
+     * already been shut down.
+     */
+    private CompletableFuture<Void> write(List<Region> copies) {
+        try {
+            return CompletableFuture.runAsync(() -> copies.forEach(this::save), io);
+        } catch (RejectedExecutionException e) {
+            copies.forEach(this::save);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private Path file(int regionX, int regionZ) {
+        return directory.resolve("r." + regionX + "." + regionZ + ".veins");
+    }
+
+    private Region read(long key) {
+        Region region = new Region(key);
+        Path file = file((int) (key >> 32), (int) key);
+        if (!Files.exists(file)) {
+            return region;
+        }
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                LOGGER.atWarning().log("Ignoring vein index file %s with an unknown format", file);
+                return region;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long center = in.readLong();
+                long meta = in.readLong();
+                int blocks = in.readInt();
+                region.add(bucket(PackedBlockPos.x(center) >> 5, PackedBlockPos.z(center) >> 5), center, meta, blocks);
+            }
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not read vein index file %s, starting it over", file);
+            return new Region(key);
+        }
+        return region;
+    }
+
+    /**
+     * Write a region copy through a temporary file. On failure the cached
+     * region, if still there, is marked dirty so the next flush retries.
+     */
+    private void save(Region copy) {
+        Path file = file((int) (copy.key >> 32), (int) copy.key);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream stream = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(copy.live);
+                for (int e = 0; e < copy.count; e++) {
+                    out.writeLong(copy.centers[e]);
+                    out.writeLong(copy.meta[e]);
+                    out.writeInt(copy.blocks[e]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.atWarning().withCause(e).log("Could not write vein index file %s", file);
+            synchronized (this) {
+                Region region = regions.get(copy.key);
+                if (region != null) {
+                    region.dirty = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * The veins recorded for one chunk, replacing whatever its bucket held.
+     */
+    private static final class ChunkVeins {
+        final int bucket;
+        final long[] centers;
+        final long[] meta;
+        final int[] blocks;
+
+        ChunkVeins(int bucket, long[] centers, long[] meta, int[] blocks) {
+            this.bucket = bucket;
+            this.centers = centers;
+            this.meta = meta;
+            this.blocks = blocks;
+        }
+
+        void applyTo(Region region) {
+            boolean changed = region.clear(bucket);
+            for (int i = 0; i < centers.length; i++) {
+                region.add(bucket, centers[i], meta[i], blocks[i]);
+            }
+            if (changed || centers.length > 0) {
+                region.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Entries of one region in parallel arrays, chained per chunk bucket.
+     * Cleared entries stay in the arrays until the region is next loaded.
+     */
+    private static final class Region {
+        final long key;
+        final int[] heads = new int[CHUNKS_PER_REGION];
+        long[] centers = new long[16];
+        long[] meta = new long[16];
+        int[] blocks = new int[16];
+        int[] next = new int[16];
+        int count;
+        int live;
+        boolean dirty;
+
+        Region(long key) {
+            this.key = key;
+            Arrays.fill(heads, -1);
+        }
+
+        void add(int bucket, long center, long entryMeta, int entryBlocks) {
+            if (count == centers.length) {
+                int capacity = count * 2;
+                centers = Arrays.copyOf(centers, capacity);
+                meta = Arrays.copyOf(meta, capacity);
+                blocks = Arrays.copyOf(blocks, capacity);
+                next = Arrays.copyOf(next, capacity);
+            }
+            centers[count] = center;
+            meta[count] = entryMeta;
+            blocks[count] = entryBlocks;
+            next[count] = heads[bucket];
+            heads[bucket] = count++;
+            live++;
+        }
+
+        /**
+         * Live entries only, packed, as a region that is never dirty.
+         */
+        Region copy() {
+            Region copy = new Region(key);
+            for (int bucket = 0; bucket < CHUNKS_PER_REGION; bucket++) {
+                for (int e = heads[bucket]; e >= 0; e = next[e]) {
+                    copy.add(bucket, centers[e], meta[e], blocks[e]);
+                }
+            }
+            return copy;
+        }
+
+        /**
+         * @return true if the bucket held anything
+         */
+        boolean clear(int bucket) {
+            if (heads[bucket] < 0) {
+                return false;
+            }
+            for (int e = heads[bucket]; e >= 0; e = next[e]) {
+                live--;
+            }
+            heads[bucket] = -1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.jordansbored.coalore;
+
+/**
+ * Immutable result of planning one chunk: the packed block positions that
+ * fall inside the chunk and the ones that spill into neighbouring chunks,
+ * plus a summary of each vein (center, bounds, block count) for the
+ * {@link VeinIndex}. Nothing in a plan depends on the chunk's block data, so
+ * it can be built on any thread and applied later on the world thread.
+ */
+final class VeinPlan {
+
+    private static final long[] NONE = new long[0];
+
+    final int chunkX;
+    final int chunkZ;
+    final int veins;
+    // Planned for a chunk loaded from disk rather than freshly generated
+    final boolean retrogen;
+    private final long[] blocks;
+    private final long[] overflow;
+    // Per vein: packed center, packed min corner, packed max corner, block count
+    private final long[] summaries;
+
+    VeinPlan(int chunkX, int chunkZ, int veins, long[] blocks, long[] overflow) {
+        this(chunkX, chunkZ, veins, blocks, overflow, NONE);
+    }
+
+    VeinPlan(int chunkX, int chunkZ, int veins, long[] blocks, long[] overflow, long[] summaries) {
+        this(chunkX, chunkZ, veins, false, blocks.length == 0 ? NONE : blocks, overflow.length == 0 ? NONE : overflow,
+            summaries.length == 0 ? NONE : summaries);
+    }
+
+    private VeinPlan(int chunkX, int chunkZ, int veins, boolean retrogen, long[] blocks, long[] overflow, long[] summaries) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.veins = veins;
+        this.retrogen = retrogen;
+        this.blocks = blocks;
+        this.overflow = overflow;
+        this.summaries = summaries;
+    }
+
+    /**
+     * The same plan, flagged as retro-generation for an existing chunk.
+     */
+    VeinPlan asRetrogen() {
+        return new VeinPlan(chunkX, chunkZ, veins, true, blocks, overflow, summaries);
+    }
+
+    int blockCount() {
+        return blocks.length;
+    }
+
+    long block(int i) {
+        return blocks[i];
+    }
+
+    int overflowCount() {
+        return overflow.length;
+    }
+
+    long overflow(int i) {
+        return overflow[i];
+    }
+
+    /** Veins summarized in this plan (noise plans have one per chunk for all its seams). */
+    int summaryCount() {
+        return summaries.length / 4;
+    }
+
+    long summaryCenter(int i) {
+        return summaries[i * 4];
+    }
+
+    long summaryMin(int i) {
+        return summaries[i * 4 + 1];
+    }
+
+    long summaryMax(int i) {
+        return summaries[i * 4 + 2];
+    }
+
+    int summaryBlocks(int i) {
+        return (int) summaries[i * 4 + 3];
+    }
+}
@@ -0,0 +1,387 @@
+package com.jordansbored.coalore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+/**
+ * Pure planning phase of natural generation: decides where the veins of a
+ * chunk go using only the world seed and chunk coordinates, and returns an
+ * immutable {@link VeinPlan}. It never touches the world, so it can run on
+ * worker threads while the world thread only applies the result.
+ *
+ * Thread-safe; scratch buffers are kept per thread.
+ */
+final class VeinPlanner {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    // Default generation settings; profiles.properties overrides them per zone or biome
+    static final int MIN_Y = 10;
+    static final int MAX_Y = 90;
+    static final int VEINS_PER_CHUNK = 5;  // Average veins per chunk
+    static final int MIN_VEIN_SIZE = 3;
+    static final int MAX_VEIN_SIZE = 7;
+    static final double SPAWN_CHANCE = 0.9; // 90% chance per chunk to spawn any veins
+    static final int TEMPLATES_PER_SIZE = 32; // Precomputed vein shapes per vein size
+    static final int MAX_VEIN_REROLLS = 3; // New positions tried for a vein that lands in empty space
+    private static final long TEMPLATE_SEED = 0x436F616C4F7265L; // Fixed so shapes never change between restarts
+
+    // Vein shapes for natural generation, built once at startup
+    private final VeinTemplateLibrary veinTemplates;
+
+    // Seam field for the noise generation mode
+    private final NoiseOreField noiseField;
+
+    private final ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(Scratch::new);
+
+    private final CoalOreMetrics metrics;
+    private final boolean debugLogging;
+
+    VeinPlanner(CoalOreMetrics metrics, boolean debugLogging) {
+        this(metrics, debugLogging, MIN_VEIN_SIZE, MAX_VEIN_SIZE, MIN_Y, MAX_Y);
+    }
+
+    /**
+     * Planner whose vein templates and noise field cover the given sizes and
+     * heights, i.e. those of every profile it will be used with.
+     */
+    VeinPlanner(CoalOreMetrics metrics, boolean debugLogging, int minVeinSize, int maxVeinSize, int minY, int maxY) {
+        this.metrics = metrics;
+        this.debugLogging = debugLogging;
+        this.veinTemplates = new VeinTemplateLibrary(minVeinSize, maxVeinSize, TEMPLATES_PER_SIZE, TEMPLATE_SEED);
+        this.noiseField = NoiseOreField.create(minY, maxY);
+    }
+
+    boolean isNoiseVectorized() {
+        return noiseField.isVectorized();
+    }
+
+    /**
+     * Plan the coal of one chunk in the given mode. Deterministic for a given
+     * profile, world seed, chunk coordinates and occupancy.
+     * @param occupancy where the chunk can hold ore, or null to place ore blindly
+     */
+    VeinPlan plan(GenerationMode mode, GenerationProfile profile, long worldSeed, int chunkX, int chunkZ, ChunkOccupancy occupancy) {
+        return mode == GenerationMode.NOISE
+            ? planNoise(profile, worldSeed, chunkX, chunkZ, occupancy)
+            : plan(profile, worldSeed, chunkX, chunkZ, occupancy);
+    }
+
+    /**
+     * Plan the veins of one chunk. Deterministic for a given profile, world
+     * seed, chunk coordinates and occupancy.
+     * @param occupancy where the chunk can hold ore, or null to place veins blindly
+     */
+    VeinPlan plan(GenerationProfile profile, long worldSeed, int chunkX, int chunkZ, ChunkOccupancy occupancy) {
+        long start = System.nanoTime();
+
+        // The chunk stream only decides how many veins there are; each vein
+        // draws from its own stream so veins do not depend on each other
+        long chunkSeed = OreSeeds.chunkSeed(worldSeed, chunkX, chunkZ);
+        SplittableRandom rand = new SplittableRandom(chunkSeed);
+
+        // Chance for this chunk to have any coal ore at all. Chunks without
+        // their own veins still get an (empty) plan so veins carried over
+        // from neighbours are completed when it is applied.
+        int numVeins = 0;
+        if (rand.nextDouble() <= profile.spawnChance) {
+            numVeins = profile.veinsPerChunk + rand.nextInt(2);
+        }
+
+        Scratch scratch = scratches.get();
+        scratch.inside = 0;
+        scratch.outside = 0;
+        scratch.summaries = 0;
+        int baseX = chunkX << 5;  // Multiply by 32 (chunk size)
+        int baseZ = chunkZ << 5;
+        int veins = 0;
+
+        int rerolls = 0;
+        int skipped = 0;
+
+        veinLoop:
+        for (int i = 0; i < numVeins; i++) {
+            SplittableRandom veinRand = new SplittableRandom(OreSeeds.veinSeed(chunkSeed, i));
+            int x;
+            int y;
+            int z;
+            int size;
+            // Re-roll from the vein's own stream while it would land in air or above
+            // the surface, so the result stays deterministic without reading blocks
+            for (int attempt = 0; ; attempt++) {
+                x = baseX + veinRand.nextInt(32);
+                z = baseZ + veinRand.nextInt(32);
+
+                y = profile.minY + (int) (Math.pow(veinRand.nextDouble(), 1.5) * (profile.maxY - profile.minY));
+
+                size = profile.minVeinSize + veinRand.nextInt(profile.maxVeinSize - profile.minVeinSize + 1);
+
+                if (occupancy == null || occupancy.mayHoldVein(x - baseX, y, z - baseZ, VeinRasterizer.REACH)) {
+                    break;
+                }
+                if (attempt == MAX_VEIN_REROLLS) {
+                    skipped++;
+                    continue veinLoop;
+                }
+                rerolls++;
+            }
+
+            if (planVein(scratch, chunkX, chunkZ, x, y, z, size, veinRand) > 0) {
+                veins++;
+            }
+        }
+
+        VeinPlan plan = new VeinPlan(chunkX, chunkZ, veins,
+            Arrays.copyOf(scratch.insideBlocks, scratch.inside),
+            Arrays.copyOf(scratch.outsideBlocks, scratch.outside),
+            Arrays.copyOf(scratch.summaryData, scratch.summaries * 4));
+
+        metrics.planTime.record(System.nanoTime() - start);
+        metrics.chunksPlanned.increment();
+        metrics.veinsPlanned.add(veins);
+        metrics.candidates.add(scratch.inside);
+        metrics.veinsRerolled.add(rerolls);
+        metrics.veinsSkipped.add(skipped);
+        return plan;
+    }
+
+    /**
+     * Noise mode: evaluate the seam field over the profile's ore height range
+     * a layer at a time. Cost is flat per layer; layers that are all air or
+     * above the surface are skipped. The field is continuous in world coordinates, so
+     * seams cross chunk borders without any carry-over. Vein count and size
+     * settings do not apply to seams.
+     */
+    VeinPlan planNoise(GenerationProfile profile, long worldSeed, int chunkX, int chunkZ, ChunkOccupancy occupancy) {
+        long start = System.nanoTime();
+        int seed = NoiseOreField.seedFor(worldSeed);
+        Scratch scratch = scratches.get();
+        scratch.inside = 0;
+        int baseX = chunkX << 5;
+        int baseZ = chunkZ << 5;
+
+        int[] masks = scratch.noiseMasks;
+        int maxY = Math.min(profile.maxY, noiseField.maxY());
+        for (int y = Math.max(profile.minY, noiseField.minY()); y <= maxY; y++) {
+            if (occupancy != null && !occupancy.mayHoldLayer(y)) {
+                continue;
+            }
+            noiseField.layerMasks(seed, chunkX, chunkZ, y, masks);
+            for (int z = 0; z < 32; z++) {
+                int mask = masks[z];
+                if (occupancy != null && mask != 0) {
+                    mask &= occupancy.columnMask(y, z);
+                }
+                while (mask != 0) {
+                    int x = Integer.numberOfTrailingZeros(mask);
+                    scratch.addInside(PackedBlockPos.pack(baseX + x, y, baseZ + z));
+                    mask &= mask - 1;
+                }
+            }
+        }
+
+        // All seams of the chunk go into the index as one entry
+        long[] summary = new long[0];
+        if (scratch.inside > 0) {
+            summary = summarize(scratch.insideBlocks, 0, scratch.inside);
+        }
+        VeinPlan plan = new VeinPlan(chunkX, chunkZ, 0, Arrays.copyOf(scratch.insideBlocks, scratch.inside), new long[0], summary);
+        metrics.planTime.record(System.nanoTime() - start);
+        metrics.chunksPlanned.increment();
+        metrics.candidates.add(scratch.inside);
+        if (debugLogging) {
+            LOGGER.atInfo().log("planNoise chunk=[%d, %d] candidates=%d", chunkX, chunkZ, scratch.inside);
+        }
+        return plan;
+    }
+
+    /**
+     * Plan command-spawned veins (blob shapes of any size) and group their
+     * blocks into one batch per chunk, in chunk order (X, then Z), so a job
+     * can apply them a chunk at a time. Batches carry no overflow.
+     * @param centers packed vein centers
+     * @param sizes vein sizes, parallel to {@code centers}
+     */
+    List<VeinPlan> planJob(long seed, long[] centers, int[] sizes) {
+        Scratch scratch = scratches.get();
+        scratch.inside = 0;
+        VeinRasterizer rasterizer = scratch.rasterizer;
+        int minChunkX = Integer.MAX_VALUE;
+        int maxChunkX = Integer.MIN_VALUE;
+        int minChunkZ = Integer.MAX_VALUE;
+        int maxChunkZ = Integer.MIN_VALUE;
+
+        for (int i = 0; i < centers.length; i++) {
+            long center = centers[i];
+            SplittableRandom veinRand = new SplittableRandom(OreSeeds.veinSeed(seed, i));
+            int count = rasterizer.rasterize(PackedBlockPos.x(center), PackedBlockPos.y(center), PackedBlockPos.z(center), sizes[i], veinRand);
+            if (count == 0) {
+                continue;
+            }
+            for (int b = 0; b < count; b++) {
+                scratch.addInside(rasterizer.block(b));
+            }
+            minChunkX = Math.min(minChunkX, rasterizer.minX() >> 5);
+            maxChunkX = Math.max(maxChunkX, rasterizer.maxX() >> 5);
+            minChunkZ = Math.min(minChunkZ, rasterizer.minZ() >> 5);
+            maxChunkZ = Math.max(maxChunkZ, rasterizer.maxZ() >> 5);
+        }
+        if (scratch.inside == 0) {
+            return new ArrayList<>();
+        }
+
+        // Counting sort by chunk slot over the job's bounding rectangle
+        int width = maxChunkZ - minChunkZ + 1;
+        int slots = (maxChunkX - minChunkX + 1) * width;
+        int[] offsets = new int[slots + 1];
+        for (int i = 0; i < scratch.inside; i++) {
+            long block = scratch.insideBlocks[i];
+            offsets[((PackedBlockPos.x(block) >> 5) - minChunkX) * width + ((PackedBlockPos.z(block) >> 5) - minChunkZ) + 1]++;
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            offsets[slot + 1] += offsets[slot];
+        }
+        int[] veinsPerSlot = new int[slots];
+        for (long center : centers) {
+            int slotX = (PackedBlockPos.x(center) >> 5) - minChunkX;
+            int slotZ = (PackedBlockPos.z(center) >> 5) - minChunkZ;
+            if (slotX >= 0 && slotZ >= 0 && slotZ < width && slotX * width + slotZ < slots) {
+                veinsPerSlot[slotX * width + slotZ]++;
+            }
+        }
+
+        long[] sorted = new long[scratch.inside];
+        int[] cursor = Arrays.copyOf(offsets, slots);
+        for (int i = 0; i < scratch.inside; i++) {
+            long block = scratch.insideBlocks[i];
+            sorted[cursor[((PackedBlockPos.x(block) >> 5) - minChunkX) * width + ((PackedBlockPos.z(block) >> 5) - minChunkZ)]++] = block;
+        }
+
+        List<VeinPlan> batches = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot++) {
+            if (offsets[slot] == offsets[slot + 1]) {
+                continue;
+            }
+            batches.add(new VeinPlan(minChunkX + slot / width, minChunkZ + slot % width, veinsPerSlot[slot],
+                Arrays.copyOfRange(sorted, offsets[slot], offsets[slot + 1]), new long[0]));
+        }
+        return batches;
+    }
+
+    /**
+     * Plan a single vein, splitting its blocks into those inside the chunk and
+     * those that spill into a neighbour.
+     * @return the number of blocks inside the chunk
+     */
+    private int planVein(Scratch scratch, int chunkX, int chunkZ, int centerX, int centerY, int centerZ, int size, SplittableRandom rand) {
+        int candidateChecks = 0;
+
+        // Copy a precomputed vein shape (random template + rotation) into the buffer
+        VeinRasterizer rasterizer = scratch.rasterizer;
+        int count = veinTemplates.place(rasterizer, centerX, centerY, centerZ, size, rand);
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            long block = rasterizer.block(i);
+            minY = Math.min(minY, PackedBlockPos.y(block));
+            maxY = Math.max(maxY, PackedBlockPos.y(block));
+            if ((PackedBlockPos.x(block) >> 5) != chunkX || (PackedBlockPos.z(block) >> 5) != chunkZ) {
+                scratch.addOutside(block);
+            } else {
+                candidateChecks++;
+                scratch.addInside(block);
+            }
+        }
+        if (debugLogging) {
+            LOGGER.atInfo().log("planVein center=(%d,%d,%d) size=%d candidates=%d overflow=%d",
+                centerX, centerY, centerZ, size, candidateChecks, count - candidateChecks);
+        }
+        if (candidateChecks > 0) {
+            scratch.addSummary(PackedBlockPos.pack(centerX, centerY, centerZ),
+                PackedBlockPos.pack(rasterizer.minX(), minY, rasterizer.minZ()),
+                PackedBlockPos.pack(rasterizer.maxX(), maxY, rasterizer.maxZ()), count);
+        }
+        return candidateChecks;
+    }
+
+    /**
+     * Center (rounded mean), bounds and count of a run of blocks, in the
+     * layout {@link VeinPlan} uses for vein summaries.
+     */
+    private static long[] summarize(long[] blocks, int from, int to) {
+        long sumX = 0;
+        long sumY = 0;
+        long sumZ = 0;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int x = PackedBlockPos.x(blocks[i]);
+            int y = PackedBlockPos.y(blocks[i]);
+            int z = PackedBlockPos.z(blocks[i]);
+            sumX += x;
+            sumY += y;
+            sumZ += z;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        int n = to - from;
+        return new long[] {
+            PackedBlockPos.pack((int) Math.round((double) sumX / n), (int) Math.round((double) sumY / n), (int) Math.round((double) sumZ / n)),
+            PackedBlockPos.pack(minX, minY, minZ),
+            PackedBlockPos.pack(maxX, maxY, maxZ),
+            n
+        };
+    }
+
+    /**
+     * Per-thread buffers reused across plans.
+     */
+    private static final class Scratch {
+        final VeinRasterizer rasterizer = new VeinRasterizer();
+        final int[] noiseMasks = new int[32];
+        long[] insideBlocks = new long[512];
+        long[] outsideBlocks = new long[256];
+        long[] summaryData = new long[4 * 8];
+        int inside;
+        int outside;
+        int summaries;
+
+        void addInside(long block) {
+            if (inside == insideBlocks.length) {
+                insideBlocks = Arrays.copyOf(insideBlocks, inside * 2);
+            }
+            insideBlocks[inside++] = block;
+        }
+
+        void addOutside(long block) {
+            if (outside == outsideBlocks.length) {
+                outsideBlocks = Arrays.copyOf(outsideBlocks, outside * 2);
+            }
+            outsideBlocks[outside++] = block;
+        }
+
+        void addSummary(long center, long min, long max, int blocks) {
+            if (summaries * 4 == summaryData.length) {
+                summaryData = Arrays.copyOf(summaryData, summaryData.length * 2);
+            }
+            int i = summaries++ * 4;
+            summaryData[i] = center;
+            summaryData[i + 1] = min;
+            summaryData[i + 2] = max;
+            summaryData[i + 3] = blocks;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.jordansbored.coalore;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Rasterizes a blob-like vein (a chain of small overlapping spheres) into a
+ * reusable voxel bitmask sized to the vein bounds. Every block position is
+ * emitted exactly once as a packed coordinate, no matter how many spheres
+ * cover it, and nothing is allocated per vein or per block.
+ *
+ * Precomputed shapes from {@link VeinTemplateLibrary} are emitted into the
+ * same buffer through {@link #stamp}, so consumers do not care which was used.
+ *
+ * Instances are not thread-safe; keep one per thread.
+ */
+final class VeinRasterizer {
+
+    // Sphere centers drift less than 2 blocks and clusters reach at most 2,
+    // so no block can land further than 3 blocks from the vein center.
+    static final int REACH = 3;
+    static final int SIDE = REACH * 2 + 1;
+    static final int VOLUME = SIDE * SIDE * SIDE;
+
+    // World height limits for ore placement
+    private static final int MIN_BLOCK_Y = 1;
+    private static final int MAX_BLOCK_Y = 310;
+
+    private final long[] mask = new long[(VOLUME + 63) >>> 6];
+    private final long[] blocks = new long[VOLUME];
+    private int count;
+    private int minX;
+    private int maxX;
+    private int minZ;
+    private int maxZ;
+
+    /**
+     * Bitmask cell index of a vein-local offset, each component in [-REACH, REACH].
+     */
+    static int cellIndex(int lx, int ly, int lz) {
+        return ((lx + REACH) * SIDE + (ly + REACH)) * SIDE + (lz + REACH);
+    }
+
+    static int cellX(int cell) {
+        return cell / (SIDE * SIDE) - REACH;
+    }
+
+    static int cellY(int cell) {
+        return (cell / SIDE) % SIDE - REACH;
+    }
+
+    static int cellZ(int cell) {
+        return cell % SIDE - REACH;
+    }
+
+    /**
+     * Rasterize a vein around the given center. The random is consumed in the
+     * same order the old per-sphere loops used, so shapes are unchanged.
+     * @return the number of unique block positions in the vein
+     */
+    int rasterize(int centerX, int centerY, int centerZ, int size, RandomGenerator rand) {
+        reset();
+        for (int i = 0; i < size; i++) {
+            float progress = (float) i / size;
+            int offsetX = (int) ((rand.nextDouble() * 2.0 - 1.0) * progress * 2);
+            int offsetY = (int) ((rand.nextDouble() * 2.0 - 1.0) * progress * 2);
+            int offsetZ = (int) ((rand.nextDouble() * 2.0 - 1.0) * progress * 2);
+
+            int clusterRadius = 1 + rand.nextInt(2);
+            double r = clusterRadius + rand.nextFloat() * 0.5;
+            double r2 = r * r;
+
+            for (int dx = -clusterRadius; dx <= clusterRadius; dx++) {
+                for (int dy = -clusterRadius; dy <= clusterRadius; dy++) {
+                    for (int dz = -clusterRadius; dz <= clusterRadius; dz++) {
+                        int dist2 = dx * dx + dy * dy + dz * dz;
+                        if ((double) dist2 <= r2) {
+                            mark(offsetX + dx, offsetY + dy, offsetZ + dz, centerX, centerY, centerZ);
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Emit a precomputed vein shape around the given center. The cells are
+     * already unique and {@code orientation} is a permutation of cell indices,
+     * so no bitmask test is needed.
+     * @param cells template cell indices, see {@link #cellIndex}
+     * @param orientation maps a cell index to its rotated/mirrored cell index
+     * @return the number of block positions emitted
+     */
+    int stamp(short[] cells, short[] orientation, int centerX, int centerY, int centerZ) {
+        reset();
+        for (int i = 0; i < cells.length; i++) {
+            int cell = orientation[cells[i]];
+            int by = centerY + cellY(cell);
+            if (by < MIN_BLOCK_Y || by > MAX_BLOCK_Y) {
+                continue;
+            }
+            emit(centerX + cellX(cell), by, centerZ + cellZ(cell));
+        }
+        return count;
+    }
+
+    /**
+     * Set the bit for a vein-local offset and emit the block the first time it is seen.
+     */
+    private void mark(int lx, int ly, int lz, int centerX, int centerY, int centerZ) {
+        int by = centerY + ly;
+        if (by < MIN_BLOCK_Y || by > MAX_BLOCK_Y) {
+            return;
+        }
+
+        int bit = cellIndex(lx, ly, lz);
+        int word = bit >>> 6;
+        long flag = 1L << bit;
+        if ((mask[word] & flag) != 0L) {
+            return; // already covered by an earlier sphere
+        }
+        mask[word] |= flag;
+
+        emit(centerX + lx, by, centerZ + lz);
+    }
+
+    private void emit(int bx, int by, int bz) {
+        blocks[count++] = PackedBlockPos.pack(bx, by, bz);
+        if (bx < minX) minX = bx;
+        if (bx > maxX) maxX = bx;
+        if (bz < minZ) minZ = bz;
+        if (bz > maxZ) maxZ = bz;
+    }
+
+    private void reset() {
+        Arrays.fill(mask, 0L);
+        count = 0;
+        minX = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        minZ = Integer.MAX_VALUE;
+        maxZ = Integer.MIN_VALUE;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Packed coordinate of the i-th emitted block, see {@link PackedBlockPos}.
+     */
+    long block(int i) {
+        return blocks[i];
+    }
+
+    int minX() {
+        return minX;
+    }
+
+    int maxX() {
+        return maxX;
+    }
+
+    int minZ() {
+        return minZ;
+    }
+
+    int maxZ() {
+        return maxZ;
+    }
+}
@@ -0,0 +1,111 @@
+package com.jordansbored.coalore;
+
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * A library of vein shapes built once at startup. For every vein size in
+ * range it holds a fixed number of template shapes stored as compact cell
+ * index arrays (see {@link VeinRasterizer#cellIndex}).
+ *
+ * Placing a vein picks one template and one of the 24 axis rotations with the
+ * caller's random, then copies the cells into a {@link VeinRasterizer} buffer.
+ * Templates are built from a fixed seed, so output stays deterministic for a
+ * given chunk seed.
+ *
+ * Immutable after construction and safe to share between threads.
+ */
+final class VeinTemplateLibrary {
+
+    /** Number of proper rotations of a cube (signed axis permutations with determinant +1). */
+    static final int ORIENTATIONS = 24;
+
+    // Built far from the height limits so no template cell gets clipped
+    private static final int BUILD_CENTER_Y = 128;
+
+    private static final short[][] ORIENTATION_MAPS = buildOrientationMaps();
+
+    private final int minSize;
+    private final int maxSize;
+    private final int variantsPerSize;
+    private final short[][][] templates;
+
+    VeinTemplateLibrary(int minSize, int maxSize, int variantsPerSize, long seed) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.variantsPerSize = variantsPerSize;
+        this.templates = new short[maxSize - minSize + 1][variantsPerSize][];
+
+        VeinRasterizer rasterizer = new VeinRasterizer();
+        Random rand = new Random(seed);
+        for (int size = minSize; size <= maxSize; size++) {
+            for (int v = 0; v < variantsPerSize; v++) {
+                int count = rasterizer.rasterize(0, BUILD_CENTER_Y, 0, size, rand);
+                short[] cells = new short[count];
+                for (int i = 0; i < count; i++) {
+                    long block = rasterizer.block(i);
+                    cells[i] = (short) VeinRasterizer.cellIndex(
+                        PackedBlockPos.x(block), PackedBlockPos.y(block) - BUILD_CENTER_Y, PackedBlockPos.z(block));
+                }
+                templates[size - minSize][v] = cells;
+            }
+        }
+    }
+
+    /**
+     * Emit a vein of the given size into {@code out}, choosing the template and
+     * orientation with {@code rand} (two draws).
+     * @return the number of block positions emitted
+     */
+    int place(VeinRasterizer out, int centerX, int centerY, int centerZ, int size, RandomGenerator rand) {
+        int clamped = Math.max(minSize, Math.min(maxSize, size));
+        short[] cells = templates[clamped - minSize][rand.nextInt(variantsPerSize)];
+        short[] orientation = ORIENTATION_MAPS[rand.nextInt(ORIENTATIONS)];
+        return out.stamp(cells, orientation, centerX, centerY, centerZ);
+    }
+
+    int minSize() {
+        return minSize;
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Build a cell index remap for each of the 24 rotations of the vein cube.
+     */
+    private static short[][] buildOrientationMaps() {
+        // Axis permutations followed by their parity (+1 even, -1 odd)
+        int[][] perms = {
+            {0, 1, 2, 1}, {1, 2, 0, 1}, {2, 0, 1, 1},
+            {0, 2, 1, -1}, {1, 0, 2, -1}, {2, 1, 0, -1}
+        };
+        short[][] maps = new short[ORIENTATIONS][];
+        int n = 0;
+        int[] v = new int[3];
+
+        for (int[] perm : perms) {
+            // Only sign flips that keep the determinant at +1 are rotations
+            int parity = perm[3];
+            for (int signs = 0; signs < 8; signs++) {
+                int sx = (signs & 1) == 0 ? 1 : -1;
+                int sy = (signs & 2) == 0 ? 1 : -1;
+                int sz = (signs & 4) == 0 ? 1 : -1;
+                if (sx * sy * sz != parity) {
+                    continue;
+                }
+
+                short[] map = new short[VeinRasterizer.VOLUME];
+                for (int cell = 0; cell < VeinRasterizer.VOLUME; cell++) {
+                    v[0] = VeinRasterizer.cellX(cell);
+                    v[1] = VeinRasterizer.cellY(cell);
+                    v[2] = VeinRasterizer.cellZ(cell);
+                    map[cell] = (short) VeinRasterizer.cellIndex(sx * v[perm[0]], sy * v[perm[1]], sz * v[perm[2]]);
+                }
+                maps[n++] = map;
+            }
+        }
+        return maps;
+    }
+}
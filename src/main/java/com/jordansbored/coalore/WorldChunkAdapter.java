@@ -0,0 +1,129 @@
+package com.jordansbored.coalore;
+
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.chunk.BlockChunk;
+import com.hypixel.hytale.server.core.universe.world.chunk.WorldChunk;
+import com.hypixel.hytale.server.core.universe.world.chunk.section.BlockSection;
+
+/**
+ * {@link OreChunk} over a server {@link WorldChunk}. The adapter and the
+ * section it hands out are reusable: the section returned by
+ * {@link #section} is only valid until the next call.
+ *
+ * A chunk wrapped with {@link #wrapLoading} is still inside its pre-load
+ * hook and has not been sent to anyone, so section invalidation (which
+ * resyncs the section to clients) is skipped for it.
+ *
+ * Not thread-safe; keep one per thread.
+ */
+final class WorldChunkAdapter implements OreChunk {
+
+    private final SectionAdapter sectionAdapter = new SectionAdapter();
+    private WorldChunk chunk;
+
+    WorldChunkAdapter wrap(WorldChunk chunk) {
+        this.chunk = chunk;
+        sectionAdapter.published = true;
+        return this;
+    }
+
+    /**
+     * Wrap a chunk that is being loaded and is not published to clients yet.
+     */
+    WorldChunkAdapter wrapLoading(WorldChunk chunk) {
+        this.chunk = chunk;
+        sectionAdapter.published = false;
+        return this;
+    }
+
+    /**
+     * World view for command placement; looks chunks up with getNonTickingChunk.
+     */
+    static OreWorld forWorld(World world) {
+        return (chunkX, chunkZ) -> {
+            WorldChunk chunk = (WorldChunk) world.getNonTickingChunk(ChunkUtil.indexChunkFromBlock(chunkX << 5, chunkZ << 5));
+            return chunk == null ? null : new WorldChunkAdapter().wrap(chunk);
+        };
+    }
+
+    @Override
+    public int getX() {
+        return chunk.getX();
+    }
+
+    @Override
+    public int getZ() {
+        return chunk.getZ();
+    }
+
+    @Override
+    public OreSection section(int sectionY) {
+        BlockChunk blockChunk = chunk.getBlockChunk();
+        if (blockChunk == null) {
+            return null;
+        }
+        BlockSection section = blockChunk.getSectionAtBlockY(sectionY << 5);
+        if (section == null) {
+            return null;
+        }
+        sectionAdapter.section = section;
+        return sectionAdapter;
+    }
+
+    @Override
+    public int height(int x, int z) {
+        BlockChunk blockChunk = chunk.getBlockChunk();
+        return blockChunk == null ? 0 : blockChunk.getHeight(x, z);
+    }
+
+    @Override
+    public int environment(int x, int y, int z) {
+        BlockChunk blockChunk = chunk.getBlockChunk();
+        return blockChunk == null ? 0 : blockChunk.getEnvironment(x, y, z);
+    }
+
+    @Override
+    public void markNeedsSaving() {
+        chunk.markNeedsSaving();
+    }
+
+    private static final class SectionAdapter implements OreSection {
+        BlockSection section;
+        boolean published = true;
+
+        @Override
+        public int get(int x, int y, int z) {
+            return section.get(ChunkUtil.indexBlock(x, y, z));
+        }
+
+        @Override
+        public boolean set(int x, int y, int z, int blockId) {
+            return section.set(ChunkUtil.indexBlock(x, y, z), blockId, 0, 0);
+        }
+
+        @Override
+        public void read(int[] out) {
+            int i = 0;
+            for (int y = 0; y < 32; y++) {
+                for (int z = 0; z < 32; z++) {
+                    for (int x = 0; x < 32; x++) {
+                        out[i++] = section.get(ChunkUtil.indexBlock(x, y, z));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean isAir() {
+            return section.isSolidAir();
+        }
+
+        @Override
+        public void invalidate() {
+            if (published) {
+                section.invalidate();
+            }
+        }
+    }
+}
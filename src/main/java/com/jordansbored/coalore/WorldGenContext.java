@@ -0,0 +1,93 @@
+package com.jordansbored.coalore;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything natural generation keeps for one world: its generation mode,
+ * carry-over store, processed-chunk bitmap, vein index, counters and the
+ * current pregen run.
+ *
+ * One context per world name, created on first use. Nothing in it is shared
+ * between worlds, so worlds that tick on different threads never contend
+ * with each other; inside a world, the store and the indexes guard
+ * themselves for the pre-load hook and the world thread. Block tables and
+ * profiles are immutable and shared by all contexts, and scratch buffers are
+ * per thread.
+ */
+final class WorldGenContext {
+
+    // Cross-chunk carry-over limits
+    private static final int PENDING_MAX_CHUNKS = 4096;
+    private static final int PENDING_MAX_BLOCKS = 128 * 1024;
+
+    private static final String PROCESSED_DIRECTORY = "processed";
+    private static final String VEIN_INDEX_DIRECTORY = "veins";
+    private static final int VEIN_INDEX_CACHED_REGIONS = 256;
+    static final String PREGEN_DIRECTORY = "pregen";
+
+    final String worldName;
+    final GenerationMode mode;
+    final PendingOreStore pending = new PendingOreStore(PENDING_MAX_CHUNKS, PENDING_MAX_BLOCKS);
+    final ProcessedChunkIndex processed;
+    final VeinIndex veins;
+    final Path pregenCheckpoint;
+
+    // Latest /coalore pregen run in this world, running or not
+    volatile PregenRun pregen;
+
+    final LongAdder chunksApplied = new LongAdder();
+    final LongAdder blocksPlaced = new LongAdder();
+
+    /**
+     * @param dataDirectory plugin data directory; per-world files go under
+     *        {@code processed/<world>} and {@code veins/<world>}, and the pregen
+     *        checkpoint is {@code pregen/<world>.properties}
+     * @param indexIo single-threaded executor for vein index reads and writes
+     */
+    WorldGenContext(String worldName, GenerationMode mode, Path dataDirectory, Executor indexIo) {
+        this.worldName = worldName;
+        this.mode = mode;
+        String directoryName = worldName.replaceAll("[^A-Za-z0-9_.-]", "_");
+        this.processed = new ProcessedChunkIndex(dataDirectory.resolve(PROCESSED_DIRECTORY).resolve(directoryName));
+        this.veins = new VeinIndex(dataDirectory.resolve(VEIN_INDEX_DIRECTORY).resolve(directoryName), VEIN_INDEX_CACHED_REGIONS, indexIo);
+        this.pregenCheckpoint = dataDirectory.resolve(PREGEN_DIRECTORY).resolve(directoryName + ".properties");
+    }
+
+    /**
+     * Write the plan's blocks into its chunk, then record its veins and mark
+     * the chunk processed.
+     * @return the number of blocks placed
+     */
+    int apply(OreGenerator generator, OreChunk chunk, VeinPlan plan, OreVariantTable table) {
+        int placed = generator.applyPlan(chunk, plan, pending, table);
+        veins.record(chunk, plan, table);
+        processed.markProcessed(plan.chunkX, plan.chunkZ);
+        chunksApplied.increment();
+        blocksPlaced.add(placed);
+        return placed;
+    }
+
+    /**
+     * Push processed-chunk bits and the pregen checkpoint to disk, and queue
+     * the dirty vein index regions for writing.
+     * @return completes once the vein index regions are written
+     */
+    CompletableFuture<Void> flush() {
+        processed.force();
+        PregenRun run = pregen;
+        if (run != null) {
+            run.save();
+        }
+        return veins.flush();
+    }
+
+    String describe() {
+        return "World " + worldName + " (" + mode.name().toLowerCase(Locale.ROOT) + "): "
+            + chunksApplied.sum() + " chunks, " + blocksPlaced.sum() + " blocks placed, "
+            + pending.entries() + " carry-over entries";
+    }
+}
@@ -0,0 +1,384 @@
+package com.jordansbored.coalore;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Build-time tool that compiles the plugin's vein settings into the asset
+ * pack's native coal assignments, so the engine places the ore while it
+ * generates terrain instead of the plugin rewriting the chunk afterwards.
+ *
+ * For every biome overlay under {@code Biomes/<group>/}, the environments the
+ * merged biome declares pick a {@link GenerationProfile} exactly as the plugin
+ * would at runtime; biomes whose environments disagree on the profile are left
+ * alone.
+ * The group's {@code Assignments/<group>/<group>_CoalOre.json} graph is the
+ * template. Only its numbers change:
+ * - the ColumnLinear scanners get the profile's height range
+ * - each Density prop's Range becomes a third of the largest vein size
+ * - the overlay's CoalOre point grid gets a spacing of
+ *   32 / sqrt(veinsPerChunk * spawnChance) blocks
+ * Both mappings are approximations picked by eye, not derived from the
+ * engine: the prop is a density blob rather than the plugin's random walk, so
+ * Range only sets the rough reach of a vein, and the spacing assumes one vein
+ * per grid cell in a 32-block chunk column, ignoring the points the engine
+ * rejects for lack of stone. Native coal therefore matches the plugin's density and height range,
+ * not its exact vein sizes; compare with {@code /coalore scan} after changing
+ * either.
+ * Biomes of a group that share a profile share the group's assignment file;
+ * otherwise each biome gets its own {@code <biome>_CoalOre.json}.
+ *
+ * The environments of all rewritten biomes (minus any that also occur in a
+ * biome left alone) are written to the list that the plugin reads for
+ * {@code generation.nativeOnly}. With {@code --list-only} nothing is
+ * rewritten and only that list is written; the build does this on every
+ * processResources, so the jar's list always matches the committed assets.
+ *
+ * Usage: {@code NativeAssignmentCompiler [--list-only] <generator sources> <generator overlays>
+ * <built generator assets> <list file> [profiles.properties]}, where each
+ * directory is a HytaleGenerator directory (the built one is the output of
+ * buildGeneratorAssets). Runs without a server: profiles are parsed without
+ * the server's logger, and nothing else from the server is loaded.
+ */
+final class NativeAssignmentCompiler {
+
+    private static final String COAL_SEED = "CoalOre";
+    private static final String ASSIGNMENT_SUFFIX = "_CoalOre";
+
+    private final Path generatorDirectory;
+    private final Path overlayDirectory;
+    private final Path builtDirectory;
+    private final GenerationProfiles profiles;
+    private final boolean listOnly;
+    private final TreeSet<String> covered = new TreeSet<>();
+    private final TreeSet<String> uncovered = new TreeSet<>();
+    private int written;
+
+    private NativeAssignmentCompiler(Path generatorDirectory, Path overlayDirectory, Path builtDirectory, GenerationProfiles profiles,
+                                     boolean listOnly) {
+        this.generatorDirectory = generatorDirectory;
+        this.overlayDirectory = overlayDirectory;
+        this.builtDirectory = builtDirectory;
+        this.profiles = profiles;
+        this.listOnly = listOnly;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean listOnly = args.length > 0 && args[0].equals("--list-only");
+        if (listOnly) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length < 4) {
+            System.err.println("Usage: NativeAssignmentCompiler [--list-only] <generator sources> <generator overlays>"
+                + " <built generator assets> <list file> [profiles.properties]");
+            System.exit(2);
+        }
+        Properties properties = new Properties();
+        if (args.length > 4) {
+            try (Reader reader = Files.newBufferedReader(Path.of(args[4]), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+
+        NativeAssignmentCompiler compiler = new NativeAssignmentCompiler(Path.of(args[0]), Path.of(args[1]), Path.of(args[2]),
+            GenerationProfiles.parse(properties, System.err::println), listOnly);
+        compiler.compileAll();
+        compiler.covered.removeAll(compiler.uncovered);
+
+        Path list = Path.of(args[3]);
+        Files.createDirectories(list.getParent());
+        StringBuilder sb = new StringBuilder("# Environments whose coal the asset pack places natively; generated by the build\n");
+        for (String environment : compiler.covered) {
+            sb.append(environment).append('\n');
+        }
+        Files.writeString(list, sb.toString(), StandardCharsets.UTF_8);
+        if (!listOnly) {
+            System.out.println("Compiled " + compiler.written + " files, " + compiler.covered.size() + " environments covered");
+        }
+    }
+
+    private void compileAll() throws IOException {
+        Path biomes = overlayDirectory.resolve("Biomes");
+        List<Path> groups;
+        try (Stream<Path> stream = Files.list(biomes)) {
+            groups = stream.filter(Files::isDirectory).sorted().toList();
+        }
+        for (Path group : groups) {
+            compileGroup(group.getFileName().toString(), group);
+        }
+    }
+
+    /**
+     * One biome group: resolve each biome's profile, then write the
+     * assignment(s) and point the biomes at them.
+     */
+    private void compileGroup(String group, Path groupDirectory) throws IOException {
+        Path templateFile = generatorDirectory.resolve("Assignments").resolve(group).resolve(group + ASSIGNMENT_SUFFIX + ".json");
+        if (!Files.exists(templateFile)) {
+            if (!listOnly) {
+                System.out.println("Skipping " + group + ": no " + templateFile.getFileName());
+            }
+            return;
+        }
+        Object template = Json.parse(Files.readString(templateFile, StandardCharsets.UTF_8));
+
+        List<Biome> biomes = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(groupDirectory)) {
+            for (Path file : stream.filter(f -> f.toString().endsWith(".json")).sorted().toList()) {
+                Biome biome = readBiome(file);
+                if (biome != null) {
+                    biomes.add(biome);
+                }
+            }
+        }
+        if (biomes.isEmpty()) {
+            return;
+        }
+
+        boolean shared = biomes.stream().map(b -> b.profile).distinct().count() == 1;
+        boolean sharedWritten = false;
+        for (Biome biome : biomes) {
+            covered.addAll(biome.environments);
+            if (listOnly) {
+                continue;
+            }
+            String name = shared ? group + ASSIGNMENT_SUFFIX : biome.name + ASSIGNMENT_SUFFIX;
+            if (!shared || !sharedWritten) {
+                sharedWritten = true;
+                Object assignment = assignment(template, name, biome.profile);
+                Path out = templateFile.resolveSibling(name + ".json");
+                Files.writeString(out, Json.write(assignment, "\t"), StandardCharsets.UTF_8);
+                written++;
+            }
+            placement(biome.coalEntry, name, biome.profile);
+            Files.writeString(biome.file, Json.write(biome.root, "  "), StandardCharsets.UTF_8);
+            written++;
+        }
+    }
+
+    /**
+     * Parse a biome overlay and its merged biome, and find the environments,
+     * profile and CoalOre prop entry.
+     * @return null if the biome cannot be compiled
+     */
+    private Biome readBiome(Path file) throws IOException {
+        Map<String, Object> root = Json.object(Json.parse(Files.readString(file, StandardCharsets.UTF_8)));
+        Path merged = builtDirectory.resolve(overlayDirectory.relativize(file));
+        List<String> environments = new ArrayList<>();
+        if (Files.exists(merged)) {
+            Map<String, Object> biome = Json.object(Json.parse(Files.readString(merged, StandardCharsets.UTF_8)));
+            collectEnvironments(biome.get("EnvironmentProvider"), environments);
+        }
+        Map<String, Object> entry = findCoalEntry(root);
+
+        String reason = null;
+        GenerationProfile profile = null;
+        if (environments.isEmpty()) {
+            reason = "no environment";
+        } else if (entry == null) {
+            reason = "no " + COAL_SEED + " placement";
+        } else {
+            for (String environment : environments) {
+                GenerationProfile p = profiles.forEnvironmentName(environment);
+                if (profile != null && p != profile) {
+                    reason = "environments " + environments + " use different profiles";
+                }
+                profile = p;
+            }
+        }
+        if (reason != null) {
+            if (!listOnly) {
+                System.out.println("Skipping " + file.getFileName() + ": " + reason);
+            }
+            uncovered.addAll(environments);
+            return null;
+        }
+        String name = file.getFileName().toString().replaceFirst("\\.json$", "");
+        return new Biome(file, name, root, entry, environments, profile);
+    }
+
+    /** Every environment id an environment provider can produce. */
+    private static void collectEnvironments(Object node, List<String> out) {
+        Map<String, Object> map = Json.object(node);
+        if (map != null) {
+            if (map.get("Environment") instanceof String environment && !out.contains(environment)) {
+                out.add(environment);
+            }
+            map.values().forEach(child -> collectEnvironments(child, out));
+        }
+        List<Object> list = Json.array(node);
+        if (list != null) {
+            list.forEach(child -> collectEnvironments(child, out));
+        }
+    }
+
+    /** The prop entry whose position grid is seeded "CoalOre". */
+    private static Map<String, Object> findCoalEntry(Object node) {
+        Map<String, Object> map = Json.object(node);
+        if (map != null) {
+            Map<String, Object> positions = Json.object(map.get("Positions"));
+            Map<String, Object> points = positions == null ? null : Json.object(positions.get("PointGenerator"));
+            if (points != null && COAL_SEED.equals(points.get("Seed")) && map.containsKey("Assignments")) {
+                return map;
+            }
+            for (Object child : map.values()) {
+                Map<String, Object> found = findCoalEntry(child);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        List<Object> list = Json.array(node);
+        if (list != null) {
+            for (Object child : list) {
+                Map<String, Object> found = findCoalEntry(child);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy of the template graph exported as {@code name}, with the profile's
+     * heights and vein reach. Copies under a new name get fresh node ids.
+     */
+    private static Object assignment(Object template, String name, GenerationProfile profile) {
+        Map<String, Object> root = Json.object(Json.parse(Json.write(template, null)));
+        boolean renamed = !name.equals(root.get("ExportAs"));
+        root.put("ExportAs", name);
+        int range = Math.max(1, Math.round(profile.maxVeinSize / 3.0f));
+        apply(root, profile, range);
+        if (renamed) {
+            Map<String, String> ids = new HashMap<>();
+            collectNodeIds(root, name, ids);
+            return renameNodeIds(root, ids);
+        }
+        return root;
+    }
+
+    private static void apply(Object node, GenerationProfile profile, int range) {
+        Map<String, Object> map = Json.object(node);
+        if (map != null) {
+            if ("ColumnLinear".equals(map.get("Type"))) {
+                map.put("MinY", BigDecimal.valueOf(profile.minY));
+                map.put("MaxY", BigDecimal.valueOf(profile.maxY));
+            }
+            if ("Density".equals(map.get("Type")) && map.get("Range") instanceof Map) {
+                Map<String, Object> extent = Json.object(map.get("Range"));
+                extent.put("X", BigDecimal.valueOf(range));
+                extent.put("Y", BigDecimal.valueOf(range));
+                extent.put("Z", BigDecimal.valueOf(range));
+            }
+            map.values().forEach(child -> apply(child, profile, range));
+        }
+        List<Object> list = Json.array(node);
+        if (list != null) {
+            list.forEach(child -> apply(child, profile, range));
+        }
+    }
+
+    private static void collectNodeIds(Object node, String salt, Map<String, String> ids) {
+        Map<String, Object> map = Json.object(node);
+        if (map != null) {
+            if (map.get("$NodeId") instanceof String id) {
+                ids.put(id, freshNodeId(id, salt));
+            }
+            // Editor positions, keyed by node id (including nodes no longer in the graph)
+            Map<String, Object> positions = Json.object(map.get("$Nodes"));
+            if (positions != null) {
+                positions.keySet().forEach(id -> ids.put(id, freshNodeId(id, salt)));
+            }
+            map.values().forEach(child -> collectNodeIds(child, salt, ids));
+        }
+        List<Object> list = Json.array(node);
+        if (list != null) {
+            list.forEach(child -> collectNodeIds(child, salt, ids));
+        }
+    }
+
+    /** Same node type prefix, new UUID derived from the old id and the new graph name. */
+    private static String freshNodeId(String id, String salt) {
+        int dash = id.indexOf('-');
+        String prefix = dash < 0 ? id + "-" : id.substring(0, dash + 1);
+        return prefix + UUID.nameUUIDFromBytes((salt + "/" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Replace node ids wherever they occur, as values or as editor metadata keys. */
+    private static Object renameNodeIds(Object node, Map<String, String> ids) {
+        Map<String, Object> map = Json.object(node);
+        if (map != null) {
+            Map<String, Object> renamed = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                renamed.put(ids.getOrDefault(entry.getKey(), entry.getKey()), renameNodeIds(entry.getValue(), ids));
+            }
+            return renamed;
+        }
+        List<Object> list = Json.array(node);
+        if (list != null) {
+            List<Object> renamed = new ArrayList<>(list.size());
+            list.forEach(child -> renamed.add(renameNodeIds(child, ids)));
+            return renamed;
+        }
+        return node instanceof String s ? ids.getOrDefault(s, s) : node;
+    }
+
+    /**
+     * Point the biome's CoalOre entry at the compiled assignment and space its
+     * grid for the profile's vein count.
+     */
+    private static void placement(Map<String, Object> entry, String name, GenerationProfile profile) {
+        double veins = profile.veinsPerChunk * profile.spawnChance;
+        int cell = veins <= 0 ? 1024 : (int) Math.max(2, Math.min(64, Math.round(32 / Math.sqrt(veins))));
+        Map<String, Object> points = Json.object(Json.object(entry.get("Positions")).get("PointGenerator"));
+        points.put("ScaleX", BigDecimal.valueOf(cell));
+        points.put("ScaleY", BigDecimal.valueOf(cell));
+        points.put("ScaleZ", BigDecimal.valueOf(cell));
+
+        Map<String, Object> imported = new LinkedHashMap<>();
+        Map<String, Object> previous = Json.object(entry.get("Assignments"));
+        if (previous != null && "Imported".equals(previous.get("Type")) && previous.get("$NodeId") != null) {
+            imported.put("$NodeId", previous.get("$NodeId"));
+        }
+        imported.put("Type", "Imported");
+        imported.put("Name", name);
+        entry.put("Assignments", imported);
+    }
+
+    /**
+     * A parsed biome file and what the compiler needs from it.
+     */
+    private static final class Biome {
+        final Path file;
+        final String name;
+        final Map<String, Object> root;
+        final Map<String, Object> coalEntry;
+        final List<String> environments;
+        final GenerationProfile profile;
+
+        Biome(Path file, String name, Map<String, Object> root, Map<String, Object> coalEntry,
+              List<String> environments, GenerationProfile profile) {
+            this.file = file;
+            this.name = name;
+            this.root = root;
+            this.coalEntry = coalEntry;
+            this.environments = environments;
+            this.profile = profile;
+        }
+    }
+}
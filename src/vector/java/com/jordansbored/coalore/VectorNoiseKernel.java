@@ -0,0 +1,47 @@
+package com.jordansbored.coalore;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of {@link NoiseOreField#scalarRowMask}. A row is done
+ * in 8-lane slices; each slice lies inside a single lattice cell of both
+ * octaves, so the cell's endpoints are broadcast and only the smoothstep
+ * weights vary per lane.
+ *
+ * Only loaded, by name, when the jdk.incubator.vector module is present.
+ */
+final class VectorNoiseKernel implements NoiseOreField.RowKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_256;
+    private static final int LANES = 8;
+
+    /**
+     * @throws UnsupportedOperationException if the CPU lacks 256-bit vectors;
+     *         the Vector API would fall back to a slow emulation, so the scalar
+     *         kernel is the better choice
+     */
+    VectorNoiseKernel() {
+        if (FloatVector.SPECIES_PREFERRED.vectorBitSize() < FLOATS.vectorBitSize()
+                || (1 << NoiseOreField.FINE_SHIFT_XZ) < LANES) {
+            throw new UnsupportedOperationException("No 256-bit vectors");
+        }
+    }
+
+    @Override
+    public int rowMask(float[] coarse, float[] fine, float threshold) {
+        int mask = 0;
+        for (int x = 0; x < 32; x += LANES) {
+            int c = x >> NoiseOreField.COARSE_SHIFT_XZ;
+            int f = x >> NoiseOreField.FINE_SHIFT_XZ;
+            FloatVector coarseValue = FloatVector.fromArray(FLOATS, NoiseOreField.COARSE_U, x & ((1 << NoiseOreField.COARSE_SHIFT_XZ) - 1))
+                .mul(coarse[c + 1] - coarse[c]).add(coarse[c]);
+            FloatVector fineValue = FloatVector.fromArray(FLOATS, NoiseOreField.FINE_U, x & ((1 << NoiseOreField.FINE_SHIFT_XZ) - 1))
+                .mul(fine[f + 1] - fine[f]).add(fine[f]);
+            FloatVector density = coarseValue.mul(NoiseOreField.COARSE_WEIGHT).add(fineValue.mul(NoiseOreField.FINE_WEIGHT));
+            mask |= (int) density.compare(VectorOperators.GT, threshold).toLong() << x;
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,39 @@
+package com.jordansbored.coalore;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of {@link SectionScanner#scalarMark}: compares a whole
+ * vector of block ids against the id range at once and stores the lane mask
+ * straight into the candidate bitset.
+ *
+ * Only loaded, by name, when the jdk.incubator.vector module is present.
+ */
+final class VectorRangeKernel implements SectionScanner.RangeKernel {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    static {
+        if (64 % INTS.length() != 0) {
+            throw new LinkageError("Unsupported vector shape " + INTS);
+        }
+    }
+
+    @Override
+    public int mark(int[] blocks, int minId, int maxId, long[] bits) {
+        int marked = 0;
+        int lanes = INTS.length();
+        for (int i = 0; i < SectionScanner.SECTION_VOLUME; i += lanes) {
+            IntVector ids = IntVector.fromArray(INTS, blocks, i);
+            VectorMask<Integer> inRange = ids.compare(VectorOperators.GE, minId).and(ids.compare(VectorOperators.LE, maxId));
+            if (inRange.anyTrue()) {
+                bits[i >>> 6] |= inRange.toLong() << (i & 63);
+                marked += inRange.trueCount();
+            }
+        }
+        return marked;
+    }
+}